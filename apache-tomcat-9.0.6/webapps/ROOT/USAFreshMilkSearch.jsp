@@ -1,4 +1,4 @@
-<%@ page import="java.util.Vector,searchEngine.*,jdbc.*" %>
+<%@ page import="java.util.List,searchEngine.*" %>
 <html>
 	<head>USA Fresh Milk</head>
 		<body>
@@ -15,46 +15,39 @@
         String arr = request.getParameter("words");
 	out.println("<br>Search results for: " + arr + "<br><br>");
 
-        String[] a = arr.split(" ");
-
-	Porter porter = new Porter();
-		
-	for(int i = 0; i < a.length; i++){
-		a[i] = porter.stripAffixes(a[i]);
-		//out.print(a[i]+ "<br>");//TO TEST
+	//the index is opened once for the whole webapp, see SearcherListener
+	Searcher searcher = (Searcher) application.getAttribute(Searcher.ATTRIBUTE);
+	if (searcher == null) {
+		out.println("The search index is not available.<br>");
+		return;
 	}
 
-	Vector<String> pageIDList = new Vector<String>();
-        DataManager dm = new DataManager();
-	pageIDList = dm.querySimilarity(a);
+	//words in double quotes are searched for as a phrase, AND, OR and NOT make it a boolean query,
+	//and a word ending in * finds the words that start with it
+	Query query = searcher.parse(arr);
+	List<SearchResult> results = searcher.search(query, DataManager.DEFAULT_RESULTS);
 
 	//TEST	
-	//out.print(pageIDList.size()+"<br>");
+	//out.print(results.size()+"<br>");
 
-	String mostFreqWord = "";
-	String pageRankIDList = "";
-	for(int j = 0; j < pageIDList.size(); j++){
-		pageRankIDList = pageIDList.get(j);
-		String[] pageRankIDListArr = pageRankIDList.split(";");
-		int pageID = Integer.parseInt(pageRankIDListArr[0]);
+	for(int j = 0; j < results.size(); j++){
+		SearchResult result = results.get(j);
 		
 		//prints out page rank (vector space model)
-		out.print(String.format("%.3f", Double.parseDouble(pageRankIDListArr[1])));
+		out.print(String.format("%.3f", result.getScore()));
 		//prints out linked title
-		out.print("<a href = \"" + dm.getURL(pageID) + "\">");
-		out.print(dm.getPageTitle(pageID) + "</a><br>");
+		out.print("<a href = \"" + result.getURL() + "\">");
+		out.print(result.getTitle() + "</a><br>");
 		//prints out last mod date and size of page
-		out.print("Last modified date: " + dm.getModifiedDate(pageID) + ";Page Size: " + dm.getPageSize(pageID) + "<br>");
+		out.print("Last modified date: " + result.getModifiedDate() + ";Page Size: " + result.getPageSize() + "<br>");
 		//print 5 most frequent words
-		mostFreqWord = dm.retrieveMostFreqKeywords(pageID);
-		out.print(mostFreqWord + "<br>");
+		out.print(result.getMostFreqKeywords() + "<br>");
 		//print child links
-		Vector<Integer> pageLinks = new Vector<Integer>();
-		pageLinks = dm.getLinks(pageID);
+		List<String> pageLinks = result.getChildLinks();
 		out.print("Child Links:<br>");
 		for(int k = 0; k < pageLinks.size(); k++){
-			out.print(dm.getURL(pageLinks.get(k)) + "<br>");
+			out.print(pageLinks.get(k) + "<br>");
 		}
 		out.print("<br>");
-	}	
+	}
 %>
@@ -0,0 +1,17 @@
+/*
+ * The page counts that the idf of a word is calculated from.
+ * A DataManager gives the counts of its own database, an IndexSnapshot those of all the segments of the index together.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+
+public interface CollectionStatistics {
+
+	//the number of pages that can be found by a search
+	public int getDocumentCount() throws IOException;
+
+	//the number of those pages with the word in their body or title, 0 if no page has it
+	public int getDocumentFrequency(String word) throws IOException;
+}
@@ -0,0 +1,164 @@
+/*
+ * Checks that the crawler follows robots.txt and is polite to the hosts it crawls.
+ * The robots.txt rules are checked on their own: which group is ours, and which of the Allow and Disallow lines
+ * that match a page decides. The politeness delay is checked by taking pages off a Frontier whose host is a small
+ * http server started here, which only serves a robots.txt with a Crawl-delay. A host that never sends its robots.txt
+ * must not hold up the crawl, which is checked the same way (it takes as long as Robots waits for a robots.txt).
+ * Prints each check and exits with 1 if one of them fails.
+ */
+
+package searchEngine;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+
+public class CrawlCheckProgram {
+
+	//the Crawl-delay in the robots.txt of the test host, longer than the delay the frontier is given
+	private static final long ROBOTS_DELAY = 200;
+	private static final long FRONTIER_DELAY = 50;
+	//how much earlier than the delay a page may be taken, since the time is read after next() returns
+	private static final long SLACK = 10;
+
+	private static int failed = 0;
+
+	public static void main(String[] args) {
+		try {
+			checkRobots();
+			checkPoliteness();
+			checkStalledHost();
+		} catch (IOException | InterruptedException e) {
+			System.out.println(e.toString());
+			failed++;
+		}
+
+		System.out.println(failed == 0 ? "all checks passed" : failed + " checks failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "ok     " : "FAILED ") + name);
+		if (!passed) {
+			failed++;
+		}
+	}
+
+	private static void checkRobots() {
+		//groups whose name is only part of ours are not for us
+		Robots robots = Robots.parse("User-agent: a\nDisallow: /\n\nUser-agent: bot\nDisallow: /\n\n"
+				+ "User-agent: *\nDisallow: /private\nAllow: /private/ok\nDisallow: /*.pdf$\n");
+		check("a group for a part of our name is not ours", robots.isAllowed("http://host/page.html"));
+		check("the * group is used when no group names us", !robots.isAllowed("http://host/private/page.html"));
+		check("the longer Allow decides", robots.isAllowed("http://host/private/ok/page.html"));
+		check("* and $ in a rule", !robots.isAllowed("http://host/file.pdf") && robots.isAllowed("http://host/file.pdf?page=2"));
+
+		robots = Robots.parse("User-agent: *\nDisallow: /\n\nUser-agent: usafreshmilkspider\nUser-agent: other\nDisallow: /mine\n");
+		check("a group naming us in any case is ours", robots.isAllowed("http://host/page.html"));
+		check("the rules of our group are used", !robots.isAllowed("http://host/mine/page.html"));
+
+		robots = Robots.parse("User-agent: *\nAllow: /page\nDisallow: /page\nAllow: /p\nDisallow: /page.html\n");
+		check("Allow decides between rules as long", robots.isAllowed("http://host/page"));
+		check("the longer Disallow decides", !robots.isAllowed("http://host/page.html"));
+		check("an empty Disallow allows everything", Robots.parse("User-agent: *\nDisallow:\n").isAllowed("http://host/page.html"));
+	}
+
+	private static void checkPoliteness() throws IOException, InterruptedException {
+		final List<String> agents = new Vector<String>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/robots.txt", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				agents.add(exchange.getRequestHeaders().getFirst("User-Agent"));
+				byte[] body = ("User-agent: *\nDisallow: /blocked\nCrawl-delay: " + ROBOTS_DELAY / 1000.0 + "\n")
+						.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+
+		try {
+			String host = "http://127.0.0.1:" + server.getAddress().getPort();
+			List<String> links = new ArrayList<String>();
+			for (int i = 1; i <= 4; i++) {
+				links.add(host + "/page" + i + ".html");
+				links.add(host + "/blocked" + i + ".html");
+			}
+
+			Frontier frontier = new Frontier(host + "/page0.html", 20);
+			frontier.setPoliteness(1, FRONTIER_DELAY);
+
+			List<String> pages = new ArrayList<String>();
+			List<Long> times = new ArrayList<Long>();
+			String url;
+			while ((url = frontier.next()) != null) {
+				times.add(System.nanoTime() / 1000000);
+				pages.add(url);
+				if (pages.size() == 1) {
+					frontier.addAll(links);
+				}
+				frontier.fetched(url);
+				frontier.done();
+			}
+
+			long gap = Long.MAX_VALUE;
+			for (int i = 1; i < times.size(); i++) {
+				gap = Math.min(gap, times.get(i) - times.get(i - 1));
+			}
+			boolean blocked = false;
+			for (String page : pages) {
+				blocked |= page.contains("/blocked");
+			}
+
+			check("robots.txt is read once, as " + Robots.AGENT, agents.size() == 1 && Robots.AGENT.equals(agents.get(0)));
+			check("the allowed pages are crawled", pages.size() == 5);
+			check("the disallowed pages are not crawled", !blocked);
+			check("the pages of a host are " + ROBOTS_DELAY + " ms apart (shortest " + gap + " ms)", gap >= ROBOTS_DELAY - SLACK);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private static void checkStalledHost() throws IOException, InterruptedException {
+		//the server takes the request for robots.txt and does not answer until the check is done
+		final CountDownLatch release = new CountDownLatch(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/robots.txt", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+
+		try {
+			String host = "http://127.0.0.1:" + server.getAddress().getPort();
+			Frontier frontier = new Frontier(host + "/page0.html", 20);
+			String first = frontier.next();
+			if (first != null) {
+				frontier.fetched(first);
+				frontier.done();
+			}
+
+			check("a host that does not send robots.txt is allowed", (host + "/page0.html").equals(first));
+			check("the crawl ends after it", frontier.next() == null);
+		} finally {
+			release.countDown();
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+/*
+ * What the crawler needs to know about the last crawl to crawl again without downloading unchanged pages:
+ * a DataManager knows it for its own database, an IndexWriter for the whole index.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+public interface CrawlHistory {
+
+	//the last modified date and etag of every page that has been crawled, by url
+	public Map<String, String[]> getCacheValidators() throws IOException;
+
+	//the urls that the given page linked to when it was last crawled
+	public List<String> getLinkedURLs(String url) throws IOException;
+}
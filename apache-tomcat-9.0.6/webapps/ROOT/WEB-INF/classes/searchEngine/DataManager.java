@@ -7,6 +7,7 @@
  * 	the vector space model.
  * 	b. all stems extracted from the page title are inserted into another inverted file
  * 4. The indexes must be able to support phrase search such as "HONG KONG" in page titles and page bodies
+ * 	(the body and title posting lists keep the position of every occurrence, see PostingList and getPhrasePages)
  */
 
 package searchEngine;
@@ -16,14 +17,18 @@ import jdbm.RecordManagerFactory;
 import jdbm.htree.HTree;
 import jdbm.helper.FastIterator;
 import java.util.Vector;
+import java.util.Arrays;
 import java.util.Date;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Collections;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 
-public class DataManager {
+public class DataManager implements CollectionStatistics, CrawlHistory, PageNorms, TermPages, PrefixLookup {
 
 	public static final String MANAGER_ID = "recman";
 	public static final String INDEX_ID = "index";
@@ -36,6 +41,24 @@ public class DataManager {
 	private static final String PAGES_ID = "pageIDs";
 	private static final String PAGES_TO_ID = "p";
 	private static final String MOST_FREQ_ID = "mfkeywords";
+	private static final String NORMS_ID = "norms";
+	private static final String MAX_TF_ID = "maxtf";
+	private static final String DOC_FREQ_ID = "docfreq";
+	private static final String DOC_COUNT_ID = "doccount";
+	private static final String NEXT_WORD_ID = "nextwordid";
+	private static final String NEXT_PAGE_ID = "nextpageid";
+	private static final String MAX_WEIGHT_ID = "maxweight";
+	private static final String TERM_DICT_ID = "termdict";
+	private static final String CRAWL_STATE_ID = "crawlstate";
+
+	//number of results returned by querySimilarity when no other number is given
+	public static final int DEFAULT_RESULTS = 50;
+
+	//returned by lookupWordID for a word that is not in the index
+	public static final int NOT_FOUND = -1;
+
+	//weight of a keyword that appears in the title of a page
+	private static final double TITLE_MULTIPLIER = 3.0;
 
 	private RecordManager recordManager;
 	
@@ -56,19 +79,62 @@ public class DataManager {
 	private HTree wordToIDHash;
 
 	//Conversion for pageIDs -> urls (also stores metadata)
-	//format: pageID -> url;pagetitle;last modified date;page size
+	//format: pageID -> url;pagetitle;last modified date;page size;etag, or only the url for a page only seen as a link
+	//a ; or \ in a field is escaped with a \, see splitRecord
 	private HTree pageIDs;
 	private HTree pageToIDHash;
 
 	//Hash to store the top five most frequent keywords
 	private HTree mostFreqHash;
+
+	//Statistics for the vector space model, recalculated when the database is finalized
+	//pageID -> length of the page vector
+	private HTree normHash;
+	//pageID -> frequency of the most frequent keyword of the page
+	private HTree maxTFHash;
+	//wordID -> number of pages that have the word in their body or title
+	private HTree docFreqHash;
+	//wordID -> the largest weight of the word in any page vector, without the idf, divided by the length of that vector
+	//(the idf is left out so that the bound still holds when a query uses the idf of a larger collection)
+	private HTree maxWeightHash;
 	
+	//the words that are on a page in sorted order, for prefix and range lookups, saved when the database is finalized
+	//read when it is first needed, see getTermDictionary
+	private TermDictionary termDictionary;
+
 	//The next ID number to give to the next unknown word or url
 	private int currWordID = 0;
 	private int currPageID = 0;
 
+	//the changes are committed once commitPages pages have been added or about commitBytes bytes written since
+	//the last commit, see setCommitBatch; 0 for no limit
+	private int commitPages = 0;
+	private long commitBytes = 0;
+	private int pendingPages = 0;
+	private long pendingBytes = 0;
+
+	//the name of the database files, without the .db and .lg extensions
+	private String name;
+
+	//a read only DataManager never changes the database, see DataManager(boolean)
+	private boolean readOnly;
+
 	public DataManager() throws IOException {
-		recordManager = RecordManagerFactory.createRecordManager(MANAGER_ID);
+		this(false);
+	}
+
+	//readOnly = true opens the database for searching only: every method that would change it throws an IOException,
+	//and nothing is committed, so a search never writes to the files
+	//JDBM always opens its files for writing, tables missing from an old database are created in memory and dropped on close
+	public DataManager(boolean readOnly) throws IOException {
+		this(MANAGER_ID, readOnly);
+	}
+
+	//opens the database in the given files instead of the default one, e.g. a segment of the index (see IndexWriter)
+	public DataManager(String name, boolean readOnly) throws IOException {
+		this.name = name;
+		this.readOnly = readOnly;
+		recordManager = RecordManagerFactory.createRecordManager(name);
 		createIndexTable(BODY_ID);
 		createIndexTable(TITLE_ID);
 		createIndexTable(LINKS_ID);
@@ -78,15 +144,41 @@ public class DataManager {
 		createIndexTable(WORDS_TO_ID);
 		createIndexTable(PAGES_TO_ID);
 
-		String id = MOST_FREQ_ID;
+		mostFreqHash = loadHash(MOST_FREQ_ID);
+		normHash = loadHash(NORMS_ID);
+		maxTFHash = loadHash(MAX_TF_ID);
+		docFreqHash = loadHash(DOC_FREQ_ID);
+		maxWeightHash = loadHash(MAX_WEIGHT_ID);
+
+		//the next ids are only needed to add words and pages
+		if (!readOnly) {
+			Initialize();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	private void checkWritable() throws IOException {
+		if (readOnly) {
+			throw new IOException("the database is open read only");
+		}
+	}
+
+	private HTree loadHash(String id) throws IOException {
 		long hashid = recordManager.getNamedObject(id);
 		if (hashid != 0) {
-			mostFreqHash = HTree.load(recordManager, hashid);
+			return HTree.load(recordManager, hashid);
 		} else {
-			mostFreqHash = HTree.createInstance(recordManager);
-			recordManager.setNamedObject(id, mostFreqHash.getRecid());
+			HTree hash = HTree.createInstance(recordManager);
+			recordManager.setNamedObject(id, hash.getRecid());
+			return hash;
 		}
-		Initialize();
 	}
 
 	/*
@@ -99,14 +191,24 @@ public class DataManager {
 			d.addEntry(DataManager.BODY_ID, "word2", "url2");
 			d.addEntry(DataManager.BODY_ID, "word3", "url2");
 			d.printAll();
-			d.finalize();
+			d.finish();
 		} catch (IOException e) {
 			System.err.println("1 " + e.toString());
 		}
 	}
 	*/
 
+	//reads the next ids to hand out, which are saved with every commit
 	public void Initialize() throws IOException {
+		long wordRecid = recordManager.getNamedObject(NEXT_WORD_ID);
+		long pageRecid = recordManager.getNamedObject(NEXT_PAGE_ID);
+		if (wordRecid != 0 && pageRecid != 0) {
+			currWordID = (Integer) recordManager.fetch(wordRecid);
+			currPageID = (Integer) recordManager.fetch(pageRecid);
+			return;
+		}
+
+		//a database from before the next ids were saved, they are found from the largest ids in use
 		FastIterator wordIter = wordIDs.keys();
 		FastIterator pageIter = pageIDs.keys();
 		
@@ -185,107 +287,39 @@ public class DataManager {
 
 		Integer key;
 		while((key=(Integer)iter.next()) != null) {
-			String content = (String) indexHash.get(key);
-			String[] a = content.split(";");
-
-			Vector<IdFreqPair> topFreq = new Vector<IdFreqPair>();
-			int smallestTop = -1;
-
-			for (String element : a) {
-				String[] b = element.split(":");
-				Integer currFreq = Integer.parseInt(b[1]);
-				Integer currPageID = Integer.parseInt(b[0]);
-				boolean stop = false;
-
-				for (IdFreqPair pairs : topFreq) {
-					if (pairs.id == currPageID) {
-						stop = true;
-					}
-				}
+			PostingList keywords = PostingList.fromBytes((byte[]) indexHash.get(key));
 
-				/*
-					System.out.println();
-				System.out.println();
-				for (IdFreqPair h : topFreq) {
-						System.out.println("p: " + h.id + ", " + h.freq);
-					}
-					*/
-
-				IdFreqPair p = new IdFreqPair(currPageID, currFreq);
-				if (!stop) {
-					if (topFreq.size() == 0) {
-						topFreq.add(p);
-						smallestTop = currFreq;
-					} else if (topFreq.size() < 5) {
-						boolean added = false;
-						for (int i = 0; i < topFreq.size(); i++) {
-							IdFreqPair c = topFreq.elementAt(i);
-							
-							if (currFreq > c.id) {
-								topFreq.insertElementAt(p, i);
-								added = true;
-								break;
-							}
-						}
-
-						if (!added) {
-							topFreq.add(p);
-						}
-
-						if (currFreq < smallestTop) {
-							smallestTop = currFreq;
-						}
-					} else {
-						if (currFreq > smallestTop) {
-							for (int i = 0; i < topFreq.size(); i++) {
-								IdFreqPair c = topFreq.elementAt(i);
-								if (currFreq > c.id) {
-									topFreq.insertElementAt(p, i);
-									topFreq.removeElementAt(5);
-									smallestTop = topFreq.elementAt(4).freq;
-									break;
-								}
-							}
-						}
-					}
-				}
-			}
-
-			/*
-			System.out.println("in database:");
-			Vector<IdFreqPair> k = getKeywordsAndFreq(key);
-			for (IdFreqPair yu : k) {
-				System.out.println("id: " + yu.id + " | freq: " + yu.freq);
-			}
+			//keeps the (at most) five most frequent keywords, ordered by decreasing frequency
+			int[] topIDs = new int[5];
+			int[] topFreqs = new int[5];
+			int topSize = 0;
 
-			System.out.println(indexHash.get(key));
-			*/
+			for (int i = 0; i < keywords.size(); i++) {
+				int currFreq = keywords.freq(i);
+				if (topSize == 5 && currFreq <= topFreqs[4]) {
+					continue;
+				}
 
-			Vector<IdFreqPair> result = new Vector<IdFreqPair>();
-			int sizet = topFreq.size();
-			while (result.size() < sizet) {
-				int maxFreq = 0;
-				int maxid = -1;
-				for (int k = 0; k < topFreq.size(); k++) {
-					IdFreqPair pairy = topFreq.elementAt(k);
-					if (pairy.freq > maxFreq) {
-						maxFreq = pairy.freq;
-						maxid = k;
-					}
+				int j = Math.min(topSize, 4);
+				while (j > 0 && topFreqs[j - 1] < currFreq) {
+					topIDs[j] = topIDs[j - 1];
+					topFreqs[j] = topFreqs[j - 1];
+					j--;
 				}
+				topIDs[j] = keywords.id(i);
+				topFreqs[j] = currFreq;
 
-				result.add(topFreq.elementAt(maxid));
-				topFreq.removeElementAt(maxid);
+				if (topSize < 5) {
+					topSize++;
+				}
 			}
 
 			String newContent = "";
-			for (int g = 0; g < result.size(); g++) {
-				IdFreqPair currP = result.elementAt(g);
-				if (g != 4) {
-					newContent += currP.id + ":" + currP.freq + ";";
-				} else {
-					newContent += currP.id + ":" + currP.freq;
+			for (int g = 0; g < topSize; g++) {
+				if (g != 0) {
+					newContent += ";";
 				}
+				newContent += topIDs[g] + ":" + topFreqs[g];
 			}
 
 			mostFreqHash.put(key, newContent);
@@ -308,17 +342,279 @@ public class DataManager {
 		return returnString.substring(0, returnString.length() - 1);
 	}
 
-	private int maxTF(int pageID) throws IOException {
-		String content = (String) mostFreqHash.get(pageID);
-		String[] s = content.split(";");
-		String[] a = s[0].split(":");
-		return Integer.parseInt(a[1]);
+	//the length of the page vector, as of the last calculateStatistics()
+	public double getNorm(int pageID) throws IOException {
+		Double norm = (Double) normHash.get(pageID);
+		return norm == null ? 0 : norm;
+	}
+
+	public int getMaxTF(int pageID) throws IOException {
+		Integer maxTf = (Integer) maxTFHash.get(pageID);
+		return maxTf == null ? 1 : maxTf;
+	}
+
+	//the largest weight of the word in any page vector, without the idf (see calculateStatistics),
+	//or null for a database from before the bounds were kept
+	Double getMaxWeight(int wordID) throws IOException {
+		return (Double) maxWeightHash.get(wordID);
+	}
+
+	//the number of pages that have been indexed, as of the last calculateStatistics()
+	public int getDocumentCount() throws IOException {
+		long recid = recordManager.getNamedObject(DOC_COUNT_ID);
+		return recid == 0 ? 0 : (Integer) recordManager.fetch(recid);
+	}
+
+	//the number of pages with the word in their body or title, as of the last calculateStatistics()
+	public int getDocumentFrequency(String word) throws IOException {
+		int wordID = lookupWordID(word);
+		Integer docFreq = wordID == NOT_FOUND ? null : (Integer) docFreqHash.get(wordID);
+		return docFreq == null ? 0 : docFreq;
+	}
+
+	//stores a value as a named record, creating the record the first time
+	private void saveNamedObject(String name, Object value) throws IOException {
+		long recid = recordManager.getNamedObject(name);
+		if (recid == 0) {
+			recordManager.setNamedObject(name, recordManager.insert(value));
+		} else {
+			recordManager.update(recid, value);
+		}
+	}
+
+	private static double idf(int docCount, int docFreq) {
+		return Math.log((double) docCount / docFreq) / Math.log(2);
+	}
+
+	//weight of a keyword in a page vector
+	static double termWeight(int freq, boolean inTitle, double idf, int maxTf) {
+		double titleMultiplier = inTitle ? TITLE_MULTIPLIER : 1.0;
+		return freq * titleMultiplier * idf / maxTf;
+	}
+
+	//recalculates the document frequency and maximum weight of every word, and the norm and maximum term frequency
+	//of every page, so that a query only has to read the posting lists of its own words
+	//the document frequencies and count are those of this database, the page vectors use the idfs of the given collection
+	private void calculateStatistics(CollectionStatistics stats) throws IOException {
+		//document frequencies, counting a page once if the word is in both its body and title
+		//words that are no longer on any page are dropped first
+		Integer wordID;
+		IntList unusedWords = new IntList();
+		FastIterator docFreqIter = docFreqHash.keys();
+		while ((wordID = (Integer) docFreqIter.next()) != null) {
+			if (pagebodyHash.get(wordID) == null && pagetitleHash.get(wordID) == null) {
+				unusedWords.add(wordID);
+			}
+		}
+		for (int i = 0; i < unusedWords.size(); i++) {
+			docFreqHash.remove(unusedWords.get(i));
+			maxWeightHash.remove(unusedWords.get(i));
+		}
+
+		FastIterator bodyIter = pagebodyHash.keys();
+		while ((wordID = (Integer) bodyIter.next()) != null) {
+			int[] bodyPages = PostingList.decodeIds((byte[]) pagebodyHash.get(wordID));
+			int[] titlePages = PostingList.decodeIds((byte[]) pagetitleHash.get(wordID));
+			docFreqHash.put(wordID, unionSize(bodyPages, titlePages));
+		}
+
+		//words that are only in titles, and the (word, page) pairs that get the title multiplier
+		HashSet<Long> inTitle = new HashSet<Long>();
+		FastIterator titleIter = pagetitleHash.keys();
+		while ((wordID = (Integer) titleIter.next()) != null) {
+			int[] titlePages = PostingList.decodeIds((byte[]) pagetitleHash.get(wordID));
+			if (pagebodyHash.get(wordID) == null) {
+				docFreqHash.put(wordID, titlePages.length);
+			}
+			for (int pageID : titlePages) {
+				inTitle.add(((long) wordID << 32) | pageID);
+			}
+		}
+
+		int docCount = 0;
+		FastIterator countIter = indexHash.keys();
+		while (countIter.next() != null) {
+			docCount++;
+		}
+
+		saveNamedObject(DOC_COUNT_ID, docCount);
+
+		//the idf of every word in the collection, which for a database on its own are the counts just saved
+		HashMap<Integer, Double> idfs = new HashMap<Integer, Double>();
+		int collectionCount = stats.getDocumentCount();
+		FastIterator idfIter = docFreqHash.keys();
+		while ((wordID = (Integer) idfIter.next()) != null) {
+			idfs.put(wordID, idf(collectionCount, stats.getDocumentFrequency(getWordFromID(wordID))));
+		}
+
+		//the largest weight of each word in a normalized page vector, which bounds what the word adds to a similarity
+		HashMap<Integer, Double> maxWeights = new HashMap<Integer, Double>();
+
+		Integer pageID;
+		FastIterator pageIter = indexHash.keys();
+		while ((pageID = (Integer) pageIter.next()) != null) {
+			PostingList keywords = PostingList.fromBytes((byte[]) indexHash.get(pageID));
+
+			int maxTf = 1;
+			for (int i = 0; i < keywords.size(); i++) {
+				maxTf = Math.max(maxTf, keywords.freq(i));
+			}
+
+			double norm = 0;
+			double[] weights = new double[keywords.size()];
+			for (int i = 0; i < keywords.size(); i++) {
+				boolean title = inTitle.contains(((long) keywords.id(i) << 32) | pageID);
+				double weight = termWeight(keywords.freq(i), title, idfs.get(keywords.id(i)), maxTf);
+				norm += weight * weight;
+				weights[i] = termWeight(keywords.freq(i), title, 1, maxTf);
+			}
+			norm = Math.sqrt(norm);
+
+			maxTFHash.put(pageID, maxTf);
+			normHash.put(pageID, norm);
+
+			if (norm == 0) {
+				continue;
+			}
+			for (int i = 0; i < keywords.size(); i++) {
+				Double maxWeight = maxWeights.get(keywords.id(i));
+				double weight = weights[i] / norm;
+				if (maxWeight == null || weight > maxWeight) {
+					maxWeights.put(keywords.id(i), weight);
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, Double> entry : maxWeights.entrySet()) {
+			maxWeightHash.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	//the dictionary of the words with a document frequency, i.e. the words that are on a page
+	private TermDictionary buildTermDictionary() throws IOException {
+		IntList ids = new IntList();
+		FastIterator iter = docFreqHash.keys();
+
+		Integer wordID;
+		while ((wordID = (Integer) iter.next()) != null) {
+			ids.add(wordID);
+		}
+
+		String[] words = new String[ids.size()];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = getWordFromID(ids.get(i));
+		}
+
+		return TermDictionary.build(words, ids.toArray());
+	}
+
+	//the sorted words as of the last finalize, which a database from before the dictionary was saved builds in memory
+	public TermDictionary getTermDictionary() throws IOException {
+		if (termDictionary == null) {
+			long recid = recordManager.getNamedObject(TERM_DICT_ID);
+			termDictionary = recid == 0 ? buildTermDictionary() : TermDictionary.fromBytes((byte[]) recordManager.fetch(recid));
+		}
+
+		return termDictionary;
+	}
+
+	//the words that start with the prefix, in order, at most maxWords of them
+	//scans only the part of the dictionary with the prefix, instead of every word of the words table
+	public List<String> getWordsWithPrefix(String prefix, int maxWords) throws IOException {
+		return getTermDictionary().getWordsWithPrefix(prefix, maxWords);
+	}
+
+	//the number of distinct ids in two sorted arrays
+	private static int unionSize(int[] a, int[] b) {
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				i++;
+				j++;
+			}
+			size++;
+		}
+
+		return size + (a.length - i) + (b.length - j);
 	}
 
 	//finalizes the changes to the hashtables
-	public void finalize() throws IOException {
+	//a read only DataManager is just closed
+	//(not named finalize, which would make every DataManager one the garbage collector finalizes)
+	public void finish() throws IOException {
+		finish(this);
+	}
+
+	//finalizes a database that is part of a larger collection, e.g. a segment of the index,
+	//whose page vectors are weighted by the idfs of the whole collection
+	public void finish(CollectionStatistics stats) throws IOException {
+		if (readOnly) {
+			close();
+			return;
+		}
+
 		calculateMostFrequentKeywords();
+		calculateStatistics(stats);
+		termDictionary = buildTermDictionary();
+		saveNamedObject(TERM_DICT_ID, termDictionary.toBytes());
+		if (recordManager.getNamedObject(CRAWL_STATE_ID) != 0) {
+			saveNamedObject(CRAWL_STATE_ID, null);
+		}
+		commit();
+		recordManager.close();
+	}
+
+	//commits the changes together with the next ids, so they always match the ids in use
+	private void commit() throws IOException {
+		saveNamedObject(NEXT_WORD_ID, currWordID);
+		saveNamedObject(NEXT_PAGE_ID, currPageID);
 		recordManager.commit();
+		pendingPages = 0;
+		pendingBytes = 0;
+	}
+
+	//lets a crawl commit its pages in batches of maxPages pages or maxMB megabytes of changes, whichever is reached first
+	//(0 for no limit), instead of all at once when the database is finalized. JDBM keeps the changes of a transaction
+	//in memory and in its log until they are committed, so batches bound both, and a crawl that stops only loses the
+	//pages since the last commit (see isBatchFull and commit(String))
+	public void setCommitBatch(int maxPages, double maxMB) {
+		commitPages = maxPages;
+		commitBytes = (long) (maxMB * 1024 * 1024);
+	}
+
+	//true once the pages added since the last commit fill a batch
+	public boolean isBatchFull() {
+		return (commitPages > 0 && pendingPages >= commitPages) || (commitBytes > 0 && pendingBytes >= commitBytes);
+	}
+
+	//commits the changes together with the state of the crawl that made them (see Frontier.getState),
+	//so that the crawl can go on from there if it stops before the database is finalized
+	public void commit(String crawlState) throws IOException {
+		checkWritable();
+		saveNamedObject(CRAWL_STATE_ID, crawlState);
+		commit();
+	}
+
+	//the state saved with the last commit of a crawl that has not finished, or null (finish clears it)
+	public String getCrawlState() throws IOException {
+		long recid = recordManager.getNamedObject(CRAWL_STATE_ID);
+		return recid == 0 ? null : (String) recordManager.fetch(recid);
+	}
+
+	//closes the database without recalculating the statistics (see finish)
+	//changes made since the last commit are committed, unless the DataManager is read only
+	public void close() throws IOException {
+		if (readOnly) {
+			recordManager.rollback();
+		} else {
+			commit();
+		}
 		recordManager.close();
 	}
 
@@ -326,7 +622,9 @@ public class DataManager {
 	//id = which hash table to add to (body, title or links)
 	//keyword = the keyword from the page
 	//url = the url of the page
+	//a keyword is taken to be the next word of the page in the body or title, after the ones added to it so far
 	public void addEntry(String id, String key, String val) throws IOException {
+		checkWritable();
 		HTree hash = getHash(id);
 
 		int firstID, secondID;
@@ -340,133 +638,253 @@ public class DataManager {
 			secondID = getPageID(val);
 		}
 
-		//get the exisiting values to avoid duplicates
-		Vector<Integer> existingValues;
-		if (id.equals(BODY_ID)) {
-			existingValues = getPages(firstID);
-		} else if (id.equals(TITLE_ID)) {
-			existingValues = getTitles(firstID);
-		} else {
-			existingValues = getLinks(firstID);
+		byte[] data = (byte[]) hash.get(firstID);
+
+		//links are only recorded once, keywords count every occurrence
+		if (id.equals(LINKS_ID)) {
+			PostingList children = PostingList.fromBytes(data);
+			if (!children.contains(secondID)) {
+				children.add(secondID, 1);
+				hash.put(firstID, children.toBytes());
+			}
+			return;
 		}
-		
-		//get the current content and append the new entry to it
-		String content = (String) hash.get(firstID);
-
-		if (existingValues.contains(secondID)) {
-			if (id.equals(BODY_ID) || id.equals(TITLE_ID)) {
-				if (content.startsWith(Integer.toString(secondID) + ":")) {
-					int startFreq = content.indexOf(':');
-					int endFreq = content.indexOf(';');
-					int freq = 1;
-					String after = "";
-
-					if (startFreq < endFreq) {
-						freq = Integer.parseInt(content.substring(startFreq + 1, endFreq));
-						after = content.substring(content.indexOf(';'), content.length());
-					} else {
-						freq = Integer.parseInt(content.substring(startFreq + 1, content.length()));
-					}
-					
-					content = Integer.toString(secondID) + ":" + Integer.toString(freq + 1) + after;
-				} else {
-					int start = content.indexOf(";" + Integer.toString(secondID) + ":");
-
-					int startFreq = content.indexOf(':', start);
-					int endFreq = content.indexOf(';', start + 1);
-					int freq = 0;
-					String before = content.substring(0, start + 1);
-					String after = "";
-
-					if (startFreq < endFreq) {
-						freq = Integer.parseInt(content.substring(startFreq + 1, endFreq));
-						after = content.substring(endFreq, content.length());
-					} else {
-						freq = Integer.parseInt(content.substring(startFreq + 1, content.length()));
-					}
-					
-					content = before + Integer.toString(secondID) + ":" + Integer.toString(freq + 1) + after;
-				}
 
-				//update indexed hash
-				String a = (String) indexHash.get(secondID);
-				if (a.startsWith(Integer.toString(firstID) + ":")) {
-					int startFreq = a.indexOf(':');
-					int endFreq = a.indexOf(';');
-					int freq = 1;
-					String after = "";
-
-					if (startFreq < endFreq) {
-						freq = Integer.parseInt(a.substring(startFreq + 1, endFreq));
-						after = a.substring(a.indexOf(';'), a.length());
-					} else {
-						freq = Integer.parseInt(a.substring(startFreq + 1, a.length()));
-					}
-					
-					a = Integer.toString(firstID) + ":" + Integer.toString(freq + 1) + after;
-				} else {
-					int start = a.indexOf(";" + Integer.toString(firstID) + ":");
-					int startFreq = a.indexOf(':', start);
-					int endFreq = a.indexOf(';', start + 1);
-					int freq = 0;
-					String before = a.substring(0, start + 1);
-					String after = "";
-
-					if (startFreq < endFreq) {
-						freq = Integer.parseInt(a.substring(startFreq + 1, endFreq));
-						after = a.substring(endFreq, a.length());
-					} else {
-						freq = Integer.parseInt(a.substring(startFreq + 1, a.length()));
-					}
-					
-					a = before + Integer.toString(firstID) + ":" + Integer.toString(freq + 1) + after;
-				}
+		IntList position = new IntList(1);
+		position.add(nextPosition(hash, secondID));
+		PostingList postings = data == null ? new PostingList(1, true) : PostingList.fromBytes(data);
+		postings.add(secondID, position);
+		hash.put(firstID, postings.toBytes());
+
+		//update the non-inverted index
+		if (id.equals(BODY_ID) || id.equals(TITLE_ID)) {
+			PostingList keywords = PostingList.fromBytes((byte[]) indexHash.get(secondID));
+			keywords.add(firstID, 1);
+			indexHash.put(secondID, keywords.toBytes());
+		}
+	}
 
-				indexHash.put(secondID, a);
+	//the position after the last keyword of the page in the body or title index
+	private int nextPosition(HTree hash, int pageID) throws IOException {
+		int result = 0;
+		PostingList keywords = PostingList.fromBytes((byte[]) indexHash.get(pageID));
+		for (int i = 0; i < keywords.size(); i++) {
+			PostingList postings = PostingList.fromBytes((byte[]) hash.get(keywords.id(i)));
+			int index = postings.indexOf(pageID);
+			if (index >= 0 && postings.isPositional() && postings.freq(index) > 0) {
+				result = Math.max(result, postings.position(index, postings.freq(index) - 1) + 1);
 			}
-		} else {
-			if (content == null) {
-				if (id.equals(BODY_ID) || id.equals(TITLE_ID))  {
-						content = Integer.toString(secondID) + ":1";
-				} else {
-						content = Integer.toString(secondID);
-				}
-			} else {
-				if (id.equals(BODY_ID) || id.equals(TITLE_ID))  {
-						content += ";" + Integer.toString(secondID) + ":1";
-				} else {
-						content += ";" + Integer.toString(secondID);
-				}
+		}
+
+		return result;
+	}
+
+	//adds a whole page to the index at once, writing each posting and the non-inverted entry only once
+	//titleTerms and bodyTerms map every stemmed keyword of the page to the positions where it appears
+	//links = the urls the page links to
+	//if the page was indexed before, its old keywords and links are replaced
+	public void addDocument(String url, Map<String, IntList> titleTerms, Map<String, IntList> bodyTerms, List<String> links) throws IOException {
+		updateDocument(getPageID(url), titleTerms, bodyTerms, links);
+	}
+
+	//replaces everything indexed for the page with the given keywords and links
+	public void updateDocument(int pageID, Map<String, IntList> titleTerms, Map<String, IntList> bodyTerms, List<String> links) throws IOException {
+		checkWritable();
+		removeDocument(pageID);
+
+		PostingList keywords = new PostingList();
+		addPostings(pagetitleHash, pageID, titleTerms, keywords);
+		addPostings(pagebodyHash, pageID, bodyTerms, keywords);
+		if (keywords.size() > 0) {
+			byte[] data = keywords.toBytes();
+			indexHash.put(pageID, data);
+			pendingBytes += data.length;
+		}
+		pendingPages++;
+
+		PostingList children = new PostingList();
+		for (String link : links) {
+			int childID = getPageID(link);
+			if (!children.contains(childID)) {
+				children.add(childID, 1);
 			}
+		}
+		if (children.size() > 0) {
+			byte[] data = children.toBytes();
+			linksHash.put(pageID, data);
+			pendingBytes += data.length;
+		}
+	}
 
-			//add to the non-inverted index
-			if (id.equals(BODY_ID) || id.equals(TITLE_ID)) {
-				String a = (String) indexHash.get(secondID);
-				
-				if (a == null) {
-					a = Integer.toString(firstID) + ":1";
-				} else {
-					a += ";" + Integer.toString(firstID) + ":1";
-				}
+	//removes the page from the body and title indexes, and its non-inverted entry, links and most frequent keywords
+	//the non-inverted entry tells exactly which posting lists contain the page
+	//the url and metadata of the page are kept
+	public void removeDocument(int pageID) throws IOException {
+		checkWritable();
+		byte[] data = (byte[]) indexHash.get(pageID);
+		if (data != null) {
+			PostingList keywords = PostingList.fromBytes(data);
+			for (int i = 0; i < keywords.size(); i++) {
+				removePosting(pagebodyHash, keywords.id(i), pageID);
+				removePosting(pagetitleHash, keywords.id(i), pageID);
+			}
+			indexHash.remove(pageID);
+		}
+
+		if (linksHash.get(pageID) != null) {
+			linksHash.remove(pageID);
+		}
+		if (mostFreqHash.get(pageID) != null) {
+			mostFreqHash.remove(pageID);
+		}
+		if (normHash.get(pageID) != null) {
+			normHash.remove(pageID);
+			maxTFHash.remove(pageID);
+		}
+	}
 
-				indexHash.put(secondID, a);
+	private void removePosting(HTree hash, int wordID, int pageID) throws IOException {
+		byte[] data = (byte[]) hash.get(wordID);
+		if (data == null) {
+			return;
+		}
+
+		PostingList postings = PostingList.fromBytes(data);
+		if (postings.remove(pageID)) {
+			if (postings.size() == 0) {
+				hash.remove(wordID);
+			} else {
+				hash.put(wordID, postings.toBytes());
 			}
 		}
+	}
+
+	private void addPostings(HTree hash, int pageID, Map<String, IntList> terms, PostingList keywords) throws IOException {
+		for (Map.Entry<String, IntList> term : terms.entrySet()) {
+			int wordID = getWordID(term.getKey());
+			IntList positions = term.getValue();
 
-		//finally place into the actual database
-		hash.put(firstID, content);
+			byte[] data = (byte[]) hash.get(wordID);
+			PostingList postings = data == null ? new PostingList(1, true) : PostingList.fromBytes(data);
+			postings.add(pageID, positions);
+			//the whole list is written again, which is most of what a page adds to a transaction
+			data = postings.toBytes();
+			hash.put(wordID, data);
+			pendingBytes += data.length;
+
+			keywords.add(wordID, positions.size());
+		}
 	}
 
 	public void addMetaData(String url, String title, String modDate, int size) throws IOException {
+		addMetaData(url, title, modDate, size, "");
+	}
+
+	//etag = the ETag header of the page, sent back with modDate when the page is crawled again
+	public void addMetaData(String url, String title, String modDate, int size, String etag) throws IOException {
+		checkWritable();
 		int pageID = getPageID(url);		
 		HTree hash = getHash(PAGES_ID);
 		String content = (String) hash.get(PAGES_ID);
 		
-		content = url + ";" + title + ";" + modDate + ";" + size;
+		content = escapeField(url) + ";" + escapeField(title) + ";" + escapeField(modDate) + ";" + size + ";" + escapeField(etag);
 		
 		hash.put(pageID, content);
 	}
 
+	//the last modified date and etag of every page that has been crawled, by url
+	//the crawler sends them back so that the server can answer "not modified" for unchanged pages
+	public Map<String, String[]> getCacheValidators() throws IOException {
+		Map<String, String[]> result = new HashMap<String, String[]>();
+		FastIterator iter = pageIDs.keys();
+
+		Integer pageID;
+		while ((pageID = (Integer) iter.next()) != null) {
+			String[] split = splitRecord((String) pageIDs.get(pageID));
+			String modDate = split.length > 2 ? split[2] : "";
+			String etag = split.length > 4 ? split[4] : "";
+
+			if (!modDate.equals("") || !etag.equals("")) {
+				result.put(split[0], new String[] {modDate, etag});
+			}
+		}
+
+		return result;
+	}
+
+	//the urls that the given page linked to when it was last crawled
+	public List<String> getLinkedURLs(String url) throws IOException {
+		List<String> result = new Vector<String>();
+		Integer pageID = (Integer) pageToIDHash.get(url);
+
+		if (pageID != null) {
+			for (int childID : PostingList.decodeIds((byte[]) linksHash.get(pageID))) {
+				result.add(getURL(childID));
+			}
+		}
+
+		return result;
+	}
+
+	//true if the page has been crawled into this database, and not only seen as a link on another page
+	public boolean isCrawled(String url) throws IOException {
+		Integer pageID = (Integer) pageToIDHash.get(url);
+		return pageID != null && hasMetaData(pageID);
+	}
+
+	//the urls of all the pages that have been crawled into this database
+	public List<String> getCrawledURLs() throws IOException {
+		List<String> result = new Vector<String>();
+		FastIterator iter = pageIDs.keys();
+
+		Integer pageID;
+		while ((pageID = (Integer) iter.next()) != null) {
+			if (hasMetaData(pageID)) {
+				result.add(getURL(pageID));
+			}
+		}
+
+		return result;
+	}
+
+	//a page that was only seen as a link has just its url in the pages table, see addMetaData
+	private boolean hasMetaData(int pageID) throws IOException {
+		String content = (String) pageIDs.get(pageID);
+		return content != null && splitRecord(content).length > 1;
+	}
+
+	//a field of a page record with its ; and \ escaped
+	private static String escapeField(String field) {
+		return field.replace("\\", "\\\\").replace(";", "\\;");
+	}
+
+	//the fields of a page record, see pageIDs
+	//a record written before the fields were escaped has more than five fields if its url or title has a ;
+	//its date, size and etag are then the last three fields and the rest is taken as the title
+	private static String[] splitRecord(String content) {
+		List<String> fields = new Vector<String>();
+		StringBuilder field = new StringBuilder();
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c == '\\' && i + 1 < content.length() && (content.charAt(i + 1) == ';' || content.charAt(i + 1) == '\\')) {
+				i++;
+				field.append(content.charAt(i));
+			} else if (c == ';') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+
+		while (fields.size() > 5) {
+			fields.set(1, fields.get(1) + ";" + fields.remove(2));
+		}
+
+		return fields.toArray(new String[fields.size()]);
+	}
+
 	private HTree getHash(String id) {
 		if (id.equals(BODY_ID)) {
 			return pagebodyHash;
@@ -487,79 +905,32 @@ public class DataManager {
 		}
 	}
 	
-	//get the pages (pageIDs) that the given word appears on
-	public Vector<Integer> getPages(int wordID) throws IOException {
-		Vector<Integer> result = new Vector<Integer>();
-		HTree hash = getHash(BODY_ID);
-		String content = (String) hash.get(wordID);
-
-		if (content != null) {
-			String[] split = content.split(";");
-		
-			for (String id : split) {
-				String[] a = id.split(":");
-				result.add(Integer.parseInt(a[0]));
-			}
-		}
-
-		return result;
+	//get the pages (pageIDs) that the given word appears on, in id order
+	public int[] getPages(int wordID) throws IOException {
+		return PostingList.decodeIds((byte[]) pagebodyHash.get(wordID));
 	}
 
-	public Vector<String> getPagesAndFreq(int wordID) throws IOException {
-		Vector<String> result = new Vector<String>();
-		HTree hash = getHash(BODY_ID);
-		String content = (String) hash.get(wordID);
-
-		if (content != null) {
-			String[] split = content.split(";");
-		
-			for (String id : split) {
-				result.add(id);
-			}
-		}
-
-		return result;
+	//get the pages (pageIDs) that the given word appears on together with the frequency on each page
+	public PostingList getPagesAndFreq(int wordID) throws IOException {
+		return PostingList.fromBytes((byte[]) pagebodyHash.get(wordID), false);
 	}
 	
 	//get the pages (pageIDs) that this word appears as the title on
-	private Vector<Integer> getTitles(int wordID) throws IOException {
-		Vector<Integer> result = new Vector<Integer>();
-		HTree hash = getHash(TITLE_ID);
-		String content = (String) hash.get(wordID);
-		
-		if (content != null) {
-			String[] split = content.split(";");
-		
-			for (String id : split) {
-				String[] a = id.split(":");
-				result.add(Integer.parseInt(a[0]));
-			}
-		}
-
-		return result;
+	private int[] getTitles(int wordID) throws IOException {
+		return PostingList.decodeIds((byte[]) pagetitleHash.get(wordID));
 	}
 
-	//get the pages that the given page links to
-	public Vector<Integer> getLinks(int pageID) throws IOException {
-		Vector<Integer> result = new Vector<Integer>();
-		HTree hash = getHash(LINKS_ID);
-		String content = (String) hash.get(pageID);
-		
-		if (content != null) {
-			String[] split = content.split(";");
-		
-			for (String id : split) {
-				result.add(Integer.parseInt(id));
-			}
-		}
-
-		return result;
+	//get the pages that the given page links to, in id order
+	public int[] getLinks(int pageID) throws IOException {
+		return PostingList.decodeIds((byte[]) linksHash.get(pageID));
 	}
 
 	//if the value already exist, it returns the id, otherwise creates the entry and returns the id it assigns to it.
-	private int getWordID(String word) throws IOException {
+	//only for adding pages, queries use lookupWordID
+	int getWordID(String word) throws IOException {
 		Integer wordID = (Integer) wordToIDHash.get(word);
 		if (wordID == null) {
+			checkWritable();
 			wordID = currWordID;
 			currWordID++;
 			wordIDs.put(wordID, word);
@@ -568,13 +939,31 @@ public class DataManager {
 
 		return wordID;
 	}
+
+	//the id of the word, or NOT_FOUND if no page has ever had it; never changes the database
+	public int lookupWordID(String word) throws IOException {
+		Integer wordID = (Integer) wordToIDHash.get(word);
+		return wordID == null ? NOT_FOUND : wordID;
+	}
+
+	//the id of the page, or NOT_FOUND if the url has never been crawled or seen as a link; never changes the database
+	public int lookupPageID(String url) throws IOException {
+		Integer pageID = (Integer) pageToIDHash.get(url);
+		return pageID == null ? NOT_FOUND : pageID;
+	}
+
+	//true if the page has keywords in the index, i.e. it can be found by a search
+	public boolean hasDocument(int pageID) throws IOException {
+		return indexHash.get(pageID) != null;
+	}
 	
-	private int getPageID(String url) throws IOException {
+	int getPageID(String url) throws IOException {
 		Integer pageID = (Integer) pageToIDHash.get(url);
 		if (pageID == null) {
+			checkWritable();
 			pageID = currPageID;
 			currPageID++;
-			pageIDs.put(pageID, url);
+			pageIDs.put(pageID, escapeField(url));
 			pageToIDHash.put(url, pageID);
 		}
 
@@ -582,24 +971,58 @@ public class DataManager {
 	}
 	
 	//deletes an entry from the hashtable (id specifies which has table to delete from)
+	//keyword = the word for the body and title indexes, the url of the page for the links index
 	public void deleteEntry(String id, String keyword) throws IOException {
-		HTree hash;
-		if (id.equals(BODY_ID)) {
-			hash = pagebodyHash;
-		} else if (id.equals(TITLE_ID)) {
-			hash = pagetitleHash;
-		} else {
-			hash = linksHash;
+		checkWritable();
+		if (id.equals(LINKS_ID)) {
+			Integer pageID = (Integer) pageToIDHash.get(keyword);
+			if (pageID != null && linksHash.get(pageID) != null) {
+				linksHash.remove(pageID);
+			}
+			return;
 		}
 
-		hash.remove(keyword);
+		Integer wordID = (Integer) wordToIDHash.get(keyword);
+		if (wordID == null) {
+			return;
+		}
+
+		HTree hash = getHash(id);
+		byte[] data = (byte[]) hash.get(wordID);
+		if (data == null) {
+			return;
+		}
+		hash.remove(wordID);
+
+		//the occurrences are also taken off the non-inverted entries of the pages
+		PostingList postings = PostingList.fromBytes(data, false);
+		for (int i = 0; i < postings.size(); i++) {
+			int pageID = postings.id(i);
+			PostingList keywords = PostingList.fromBytes((byte[]) indexHash.get(pageID));
+			int index = keywords.indexOf(wordID);
+			if (index < 0) {
+				continue;
+			}
+
+			if (keywords.freq(index) <= postings.freq(i)) {
+				keywords.remove(wordID);
+			} else {
+				keywords.add(wordID, -postings.freq(i));
+			}
+
+			if (keywords.size() == 0) {
+				indexHash.remove(pageID);
+			} else {
+				indexHash.put(pageID, keywords.toBytes());
+			}
+		}
 	} 
 
 	public String getPageTitle(int pageID) throws IOException {
 		HTree lookup = getHash(PAGES_ID);
 		String content = (String) lookup.get(pageID);
 		if (content != null) {
-			String[] split = content.split(";");
+			String[] split = splitRecord(content);
 			if (split.length > 1 && !split[1].equals("")) {
 				return split[1];
 			}
@@ -612,7 +1035,7 @@ public class DataManager {
 		HTree lookup = getHash(PAGES_ID);
 		String content = (String) lookup.get(pageID);
 		if (content != null) {
-			String[] split = content.split(";");
+			String[] split = splitRecord(content);
 			if (split.length > 2 && !split[2].equals("")) {
 				return split[2];
 			}
@@ -627,7 +1050,7 @@ public class DataManager {
 		HTree lookup = getHash(PAGES_ID);
 		String content = (String) lookup.get(pageID);
 		if (content != null) {
-			String[] split = content.split(";");
+			String[] split = splitRecord(content);
 			if (split.length > 0 && !split[0].equals("")) {
 				return split[0];
 			}
@@ -641,16 +1064,16 @@ public class DataManager {
 		String content = (String) lookup.get(pageID);
 		String result = null;
 		if (content != null) {
-			String[] split = content.split(";");
+			String[] split = splitRecord(content);
 			if (split.length > 3 && !split[3].equals("")) {
 				result = split[3];
 			}
 		}
 
 		if (result == null || result.equals("0")) {
-			String words = (String) indexHash.get(pageID);
+			byte[] words = (byte[]) indexHash.get(pageID);
 			if (words != null) {
-				result = Integer.toString(words.split(";").length * 4);
+				result = Integer.toString(PostingList.count(words) * 4);
 			} else {
 				result = "missing";
 			}
@@ -659,37 +1082,66 @@ public class DataManager {
 		return result;
 	}
 
-	public Vector<Integer> getKeywords(int pageID) throws IOException {
-		HTree hash = getHash(INDEX_ID);
-		String content = (String) hash.get(pageID);
-		Vector<Integer> result = new Vector<Integer>();
+	//the words (wordIDs) on the page, in id order
+	public int[] getKeywords(int pageID) throws IOException {
+		return PostingList.decodeIds((byte[]) indexHash.get(pageID));
+	}
 
-		if (content != null) {
-			String[] split = content.split(";");
-			for (int i = 0; i < split.length; i++) {
-				String[] a = split[i].split(":");
-				result.add(Integer.parseInt(a[0]));
-			}
+	public PostingList getKeywordsAndFreq(int pageID) throws IOException {
+		return PostingList.fromBytes((byte[]) indexHash.get(pageID));
+	}
+
+	//the tables as they are stored, for copying them into another database (see SegmentMerger)
+
+	//the words of the dictionary, also the ones that are no longer on any page
+	List<String> getWords() throws IOException {
+		List<String> result = new Vector<String>();
+		FastIterator iter = wordToIDHash.keys();
+
+		String word;
+		while ((word = (String) iter.next()) != null) {
+			result.add(word);
 		}
 
 		return result;
 	}
 
-	public Vector<IdFreqPair> getKeywordsAndFreq(int pageID) throws IOException {
-		HTree hash = getHash(INDEX_ID);
-		String content = (String) hash.get(pageID);
-		Vector<IdFreqPair> result = new Vector<IdFreqPair>();
+	//the pages that have keywords in the index, in id order
+	int[] getDocuments() throws IOException {
+		IntList result = new IntList();
+		FastIterator iter = indexHash.keys();
 
-		if (content != null) {
-			String[] split = content.split(";");
-			for (int i = 0; i < split.length; i++) {
-				String[] a = split[i].split(":");
-				IdFreqPair pair = new IdFreqPair(Integer.parseInt(a[0]), Integer.parseInt(a[1]));
-				result.add(pair);
-			}
+		Integer pageID;
+		while ((pageID = (Integer) iter.next()) != null) {
+			result.add(pageID);
 		}
 
-		return result;
+		int[] documents = result.toArray();
+		Arrays.sort(documents);
+		return documents;
+	}
+
+	//the list stored under the key in the body, title, links or non-inverted index, with its positions
+	PostingList getPostings(String id, int key) throws IOException {
+		return PostingList.fromBytes((byte[]) getHash(id).get(key));
+	}
+
+	//stores the list under the key in the body, title, links or non-inverted index, returns the number of bytes written
+	int putPostings(String id, int key, PostingList postings) throws IOException {
+		checkWritable();
+		byte[] data = postings.toBytes();
+		getHash(id).put(key, data);
+		return data.length;
+	}
+
+	//the entry of the page in the pages table, "url;title;last modified date;page size;etag" (see addMetaData)
+	String getPageRecord(int pageID) throws IOException {
+		return (String) pageIDs.get(pageID);
+	}
+
+	void putPageRecord(int pageID, String record) throws IOException {
+		checkWritable();
+		pageIDs.put(pageID, record);
 	}
 
 	public String getWordFromID(int wordID) throws IOException {
@@ -703,100 +1155,171 @@ public class DataManager {
 	}
 
 	//returns all the documents that the words in the query appear in.
-	public Vector<Integer> relevantDocuments(String[] queryWords) throws IOException {
-		Vector<Integer> docIDs = new Vector<Integer>();
+	//the pages that have any of the query words in their body, in id order
+	public int[] relevantDocuments(String[] queryWords) throws IOException {
+		int[] docIDs = new int[0];
 		for (int i = 0; i < queryWords.length; i++) {
-			int wordID = getWordID(queryWords[i]);
-			Vector<Integer> pages = getPages(wordID);
-			
-			for (Integer a : pages) {
-				if (!docIDs.contains(a)) {
-					docIDs.add(a);
-				}
+			int wordID = lookupWordID(queryWords[i]);
+			if (wordID == NOT_FOUND) {
+				continue;
 			}
+			docIDs = SortedIds.union(docIDs, PostingList.decodeIds((byte[]) pagebodyHash.get(wordID)));
 		}
 
 		return docIDs;
 	}
 
+	//the pages that have the word, or the phrase of several words, in their title or body, in id order
+	public int[] getTermPages(String[] term) throws IOException {
+		if (term.length != 1) {
+			return getPhrasePages(term).ids();
+		}
+
+		int wordID = lookupWordID(term[0]);
+		if (wordID == NOT_FOUND) {
+			return new int[0];
+		}
+
+		return SortedIds.union(PostingList.decodeIds((byte[]) pagebodyHash.get(wordID)),
+				PostingList.decodeIds((byte[]) pagetitleHash.get(wordID)));
+	}
+
+	//the pages that match the clauses of the query (see Query), in id order, or null if the query has no clauses
+	public int[] getMatchingPages(Query query) throws IOException {
+		return query.getMatchingPages(this);
+	}
+
+	//the pages that have the words of the phrase next to each other and in order, in their title or their body,
+	//with the number of times the phrase appears on each page
+	//only the posting lists of the phrase words are read, the positions stored in them are compared
+	public PostingList getPhrasePages(String[] phraseWords) throws IOException {
+		PostingList result = new PostingList();
+
+		int[] phraseWordIDs = new int[phraseWords.length];
+		for (int i = 0; i < phraseWords.length; i++) {
+			int wordID = lookupWordID(phraseWords[i]);
+			if (wordID == NOT_FOUND) {
+				return result;
+			}
+			phraseWordIDs[i] = wordID;
+		}
+
+		if (phraseWordIDs.length > 0) {
+			addPhraseMatches(pagetitleHash, phraseWordIDs, result);
+			addPhraseMatches(pagebodyHash, phraseWordIDs, result);
+		}
+
+		return result;
+	}
+
+	//adds the pages where the phrase appears in the given index to result
+	//lists written before positions were kept have none, so the database has to be rebuilt to find phrases in them
+	private void addPhraseMatches(HTree hash, int[] phraseWordIDs, PostingList result) throws IOException {
+		PostingList[] lists = new PostingList[phraseWordIDs.length];
+		for (int k = 0; k < lists.length; k++) {
+			lists[k] = PostingList.fromBytes((byte[]) hash.get(phraseWordIDs[k]));
+		}
+
+		PostingList.addPhraseMatches(lists, result);
+	}
+
 	public Vector<String> querySimilarity(String[] queryWords) throws IOException {
-		Vector<String> result = new Vector<String>();
+		return querySimilarity(queryWords, DEFAULT_RESULTS);
+	}
+
+	public Vector<String> querySimilarity(String[] queryWords, int maxResults) throws IOException {
+		return querySimilarity(queryWords, null, maxResults);
+	}
+
+	public Vector<String> querySimilarity(String[] queryWords, int[] allowedPages, int maxResults) throws IOException {
+		return querySimilarity(queryWords, getQueryWeights(queryWords, this), allowedPages, null, maxResults);
+	}
+
+	//ranks the pages that match the query's phrases, prefixes and boolean operators
+	public Vector<String> querySimilarity(Query query, int maxResults) throws IOException {
+		query = query.expand(this);
+		return querySimilarity(query.getWords(), getMatchingPages(query), maxResults);
+	}
 
-		Vector<Integer> relevantDocs = relevantDocuments(queryWords);
-		Vector<Integer> queryWordIDs = new Vector<Integer>();
+	//the weight of each query word, its idf in the given collection, or NaN for a word that is on no page
+	public static double[] getQueryWeights(String[] queryWords, CollectionStatistics stats) throws IOException {
+		int docCount = stats.getDocumentCount();
+		double[] result = new double[queryWords.length];
 		for (int i = 0; i < queryWords.length; i++) {
-			queryWordIDs.add(getWordID(queryWords[i]));
+			int docFreq = stats.getDocumentFrequency(queryWords[i]);
+			result[i] = docFreq == 0 ? Double.NaN : idf(docCount, docFreq);
 		}
 
-		Vector<Double> similarityScores = new Vector<Double>();
+		return result;
+	}
 
-		for (Integer currPageID : relevantDocs) {
-			Vector<IdFreqPair> pageTerms = getKeywordsAndFreq(currPageID);
+	//ranks the pages containing the query words by cosine similarity with the query and returns the best maxResults
+	//as "pageID;score" strings, best first
+	//only the posting lists of the query words are read; the page norms and maximum term frequencies
+	//come from the tables filled in by calculateStatistics()
+	//queryWeights = the weight of each query word (see getQueryWeights), a word that is there twice counts once
+	//allowedPages = the pages that may be returned, in id order (see getMatchingPages), or null for any page
+	//deletedPages = pages that must not be returned, in id order, or null (see IndexSnapshot)
+	//
+	//pages are visited in id order, walking all the query words' lists together (see QueryScorer.topPages),
+	//with the same results as querySimilarityExhaustive()
+	public Vector<String> querySimilarity(String[] queryWords, double[] queryWeights, int[] allowedPages, int[] deletedPages,
+			int maxResults) throws IOException {
+		return toResults(topPages(queryWords, queryWeights, allowedPages, deletedPages, maxResults));
+	}
 
-			Vector<Double> termWeights = new Vector<Double>();
+	//the same ranking with the ids and scores of the pages left in the heap, for callers that need them as numbers
+	public TopKHeap topPages(String[] queryWords, double[] queryWeights, int[] allowedPages, int[] deletedPages,
+			int maxResults) throws IOException {
+		TermCursor[] terms = getQueryTerms(queryWords, queryWeights);
+		double queryMagnitude = QueryScorer.queryMagnitude(queryWords, queryWeights);
+		return QueryScorer.topPages(terms, queryMagnitude, allowedPages, deletedPages, this, maxResults);
+	}
 
-			double innerProduct = 0;
-			double queryMagnitude = 0;
-			double pageMagnitude = 0;
-			for (IdFreqPair pageTerm : pageTerms) {
-				String pBody = (String) pagebodyHash.get(pageTerm.id);
-				if (pBody == null) {
-					pBody = (String) pagetitleHash.get(pageTerm.id);
-				}
-				double docFreq = 1.0;
-				if (pBody != null) {
-					docFreq = pBody.split(";").length;
-				}
-				
-				int maxTf = maxTF(currPageID);
+	//scores every page that has one of the query words, used to check the results of querySimilarity()
+	public Vector<String> querySimilarityExhaustive(String[] queryWords, int[] allowedPages, int maxResults) throws IOException {
+		return querySimilarityExhaustive(queryWords, getQueryWeights(queryWords, this), allowedPages, null, maxResults);
+	}
 
-				double titleMultiplier = 1.0;
-				Vector<Integer> titlepages = getTitles(pageTerm.id);
-				if (titlepages.contains(currPageID)) {
-					titleMultiplier = 3.0;
-				}
-				
-				double weight = pageTerm.freq * titleMultiplier * (Math.log(300 / docFreq) / Math.log(2));
-				weight /= maxTf;
-				pageMagnitude += weight * weight;
-
-				if (queryWordIDs.contains(pageTerm.id)) {
-					double queryWeight = (Math.log(300 / docFreq) / Math.log(2));
-					queryMagnitude += queryWeight * queryWeight;
-				
-					innerProduct += weight * queryWeight;
-				}
-				
-			}
+	public Vector<String> querySimilarityExhaustive(String[] queryWords, double[] queryWeights, int[] allowedPages,
+			int[] deletedPages, int maxResults) throws IOException {
+		TermCursor[] terms = getQueryTerms(queryWords, queryWeights);
+		double queryMagnitude = QueryScorer.queryMagnitude(queryWords, queryWeights);
+		return toResults(QueryScorer.topPagesExhaustive(terms, queryMagnitude, allowedPages, deletedPages, this, maxResults));
+	}
 
-			pageMagnitude = Math.sqrt(pageMagnitude);
-			queryMagnitude = Math.sqrt(queryMagnitude);
+	//a cursor over the pages of each distinct query word that is in the index, in query order
+	//the weight of a word in the query is its idf
+	private TermCursor[] getQueryTerms(String[] queryWords, double[] queryWeights) throws IOException {
+		Vector<TermCursor> terms = new Vector<TermCursor>();
+		for (int q = 0; q < queryWords.length; q++) {
+			int wordID = lookupWordID(queryWords[q]);
+			if (wordID == NOT_FOUND || Double.isNaN(queryWeights[q]) || QueryScorer.isRepeated(queryWords, q)) {
+				continue;
+			}
 
-			double similarity = innerProduct / (pageMagnitude * queryMagnitude);
+			//without a stored bound (a database from before bounds were kept) the word is never skipped
+			Double maxWeight = (Double) maxWeightHash.get(wordID);
+			double queryWeight = queryWeights[q];
+			double upperBound = maxWeight == null ? Double.POSITIVE_INFINITY : maxWeight * queryWeight * queryWeight;
 
-			//System.out.println("in: " + innerProduct + " pm: " + pageMagnitude + "qm: " + queryMagnitude);
-			//System.out.println(similarity);
-			similarityScores.add(similarity);
+			//a page can have the word in its body, its title or both
+			PostingList bodyPages = getPagesAndFreq(wordID);
+			PostingList titlePages = PostingList.fromBytes((byte[]) pagetitleHash.get(wordID), false);
+			terms.add(new TermCursor(bodyPages, titlePages, queryWeight, upperBound));
 		}
 
-		while (!similarityScores.isEmpty() && result.size() < 50) {
-			double max = 0;
-			int index = -1;
+		return terms.toArray(new TermCursor[terms.size()]);
+	}
 
-			for (int i = 0; i < similarityScores.size(); i++) {
-				double d = similarityScores.elementAt(i);
-				
-				if (d > max) {
-					max = d;
-					index = i;
-				}
-			}
+	private static Vector<String> toResults(TopKHeap topPages) {
+		Vector<String> result = new Vector<String>();
 
-			//System.out.println(index + " for size: " + relevantDocs.size() + " " + similarityScores.size());
-			String resultContent = relevantDocs.elementAt(index) + ";" + similarityScores.elementAt(index);
-			result.add(resultContent);
-			relevantDocs.remove(index);
-			similarityScores.remove(index);
+		int[] pages = new int[topPages.size()];
+		double[] scores = new double[topPages.size()];
+		int count = topPages.drain(pages, scores);
+		for (int i = 0; i < count; i++) {
+			result.add(pages[i] + ";" + scores[i]);
 		}
 
 		return result;
@@ -819,7 +1342,7 @@ public class DataManager {
 		int size = 0;
 		while((key=(Integer)iter1.next()) != null) {
 			size++;
-			System.out.println(key + " = " + pagebodyHash.get(key));
+			System.out.println(key + " = " + PostingList.fromBytes((byte[]) pagebodyHash.get(key), false));
 			if (size >= maxPrint) {
 				break;
 			}
@@ -831,7 +1354,7 @@ public class DataManager {
 		size = 0;
 		while((a = (Integer)iter2.next()) != null) {
 			size++;
-			System.out.println(a + " = " + pagetitleHash.get(a));
+			System.out.println(a + " = " + PostingList.fromBytes((byte[]) pagetitleHash.get(a), false));
 			if (size >= maxPrint) {
 				break;
 			}
@@ -843,7 +1366,7 @@ public class DataManager {
 		Integer b;
 		while ((b = (Integer)iter3.next()) != null) {
 			size++;
-			System.out.println(b + " = " + linksHash.get(b));
+			System.out.println(b + " = " + PostingList.fromBytes((byte[]) linksHash.get(b)));
 			if (size >= maxPrint) {
 				break;
 			}
@@ -877,7 +1400,7 @@ public class DataManager {
 		Integer p;
 		size = 0;
 		while ((p = (Integer)iter6.next()) != null) {
-			System.out.println(p + " = " + indexHash.get(p));
+			System.out.println(p + " = " + PostingList.fromBytes((byte[]) indexHash.get(p)));
 			size++;
 			if (size >= maxPrint) {
 				break;
@@ -908,21 +1431,6 @@ public class DataManager {
 			}
 		}
 	}
-
-	private class IdFreqPair {
-		public int id;
-		public int freq;
-
-		IdFreqPair() {
-			id = -1;
-			freq = -1;
-		}
-
-		IdFreqPair(int id, int freq) {
-			this.id = id;
-			this.freq = freq;
-		}
-	}
 }
 
 
@@ -0,0 +1,25 @@
+/*
+ * Merges the index into one segment and exports it to the flat file that the search page maps (see FlatIndex).
+ * Run it once the crawl is done, while no indexer is running; the search page switches to the file on its next search
+ * and goes back to the segments when a later crawl publishes a new segment, until the index is exported again.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+
+public class ExportProgram {
+
+	public static void main(String[] args) {
+		try {
+			IndexWriter writer = new IndexWriter();
+			try {
+				writer.exportFlatIndex();
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			System.err.println(e.toString());
+		}
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * The index exported to a single file (see FlatIndexWriter), which the search page maps into memory instead of
+ * opening the databases of the segments. Searches read the file in place: the operating system keeps the parts that
+ * are used in its page cache, a word is found by a binary search over the term table, and the pages of the query
+ * words are walked straight from the mapped file (see FlatTermCursor), so a search hardly allocates anything
+ * besides its results. The mapped file is read with absolute gets only, so searches run at the same time without
+ * taking turns.
+ *
+ * The file is made of, all numbers big endian:
+ * 	a header of HEADER_SIZE bytes: MAGIC, VERSION, the generation of the segment list it was exported for (a long),
+ * 		the number of pages that can be found, the number of terms, the number of pages in the page table,
+ * 		and where the term table and the page table start
+ * 	the data the tables point to: the words, the pages of every word (see FlatTermCursor) with its body and title
+ * 		posting lists as the database stores them (see PostingList), only read for phrases,
+ * 		and the record and links of every page
+ * 	the term table, one entry of TERM_ENTRY_SIZE bytes for each word in increasing (unsigned byte) order:
+ * 		where its UTF-8 bytes start and their length, its document frequency, where its pages start,
+ * 		where its body list starts and its length, the same for its title list, and its largest weight (a double,
+ * 		see DataManager.calculateStatistics, NaN if it was not stored)
+ * 	the page table, one entry of PAGE_ENTRY_SIZE bytes for each page id from 0 up: the length of the page vector
+ * 		(a double), its maximum term frequency, where its record starts and its length, where its links start
+ * 		and their number
+ * The record of a page that can be found is its url, title, last modified date, size and most frequent keywords,
+ * as the search page shows them; a page that was only seen as a link just has its url. Each of them is written as
+ * the length of its UTF-8 bytes (an int) followed by the bytes, since a title can have any characters in it.
+ */
+
+package searchEngine;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Vector;
+
+public class FlatIndex implements SearchIndex, CollectionStatistics, TermPages, PageNorms, PrefixLookup {
+
+	//the name of the file in the index directory
+	public static final String FILE_NAME = "index.flat";
+
+	static final int MAGIC = 0x464c4154;
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 64;
+	static final int TERM_ENTRY_SIZE = 40;
+	static final int PAGE_ENTRY_SIZE = 32;
+
+	private ByteBuffer buffer;
+
+	private long generation;
+	private int docCount;
+	private int termCount;
+	private int pageCount;
+	private int termTable;
+	private int pageTable;
+
+	//the number of searches using the index, plus one for the Searcher while it is the current index
+	private int refCount = 1;
+
+	private FlatIndex(File file, ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is not a flat index");
+		}
+		generation = buffer.getLong(8);
+		docCount = buffer.getInt(16);
+		termCount = buffer.getInt(20);
+		pageCount = buffer.getInt(24);
+		termTable = buffer.getInt(28);
+		pageTable = buffer.getInt(32);
+		if (termTable + (long) termCount * TERM_ENTRY_SIZE > buffer.capacity()
+				|| pageTable + (long) pageCount * PAGE_ENTRY_SIZE > buffer.capacity()) {
+			throw new IOException(file + " is cut short");
+		}
+	}
+
+	//maps the file into memory
+	//the mapping stays valid after the channel is closed, and is let go of when the buffer is garbage collected
+	public static FlatIndex open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			return new FlatIndex(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			channel.close();
+		}
+	}
+
+	//the generation of the segment list the file was exported for, or -1 if there is no flat index in the file
+	//reads only the header, so the Searcher can check it without mapping the file
+	public static long readGeneration(File file) {
+		if (!file.exists()) {
+			return -1;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					return -1;
+				}
+				return in.readLong();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public synchronized void acquire() {
+		if (refCount == 0) {
+			throw new IllegalStateException("the flat index has been closed");
+		}
+		refCount++;
+	}
+
+	//there is nothing to close, the mapping goes with the buffer
+	public synchronized void release() {
+		refCount--;
+	}
+
+	public int getDocumentCount() {
+		return docCount;
+	}
+
+	public int getDocumentFrequency(String word) {
+		int entry = findTerm(word);
+		return entry < 0 ? 0 : buffer.getInt(entry + 8);
+	}
+
+	public double getNorm(int pageID) {
+		return pageID < pageCount ? buffer.getDouble(pageEntry(pageID)) : 0;
+	}
+
+	public int getMaxTF(int pageID) {
+		return pageID < pageCount ? buffer.getInt(pageEntry(pageID) + 8) : 1;
+	}
+
+	//ranks the pages for the query the same way as DataManager.querySimilarity, best first
+	public List<SearchResult> search(Query query, int maxResults) throws IOException {
+		query = query.expand(this);
+		String[] queryWords = query.getWords();
+		double[] queryWeights = DataManager.getQueryWeights(queryWords, this);
+		TermCursor[] terms = getQueryTerms(queryWords, queryWeights);
+		double queryMagnitude = QueryScorer.queryMagnitude(queryWords, queryWeights);
+		TopKHeap topPages = QueryScorer.topPages(terms, queryMagnitude, query.getMatchingPages(this), null, this, maxResults);
+
+		int[] pages = new int[topPages.size()];
+		double[] scores = new double[topPages.size()];
+		int count = topPages.drain(pages, scores);
+
+		List<SearchResult> results = new Vector<SearchResult>();
+		for (int i = 0; i < count; i++) {
+			results.add(getResult(pages[i], scores[i]));
+		}
+
+		return results;
+	}
+
+	//a cursor over the pages of each distinct query word that is in the index, in query order
+	private TermCursor[] getQueryTerms(String[] queryWords, double[] queryWeights) {
+		Vector<TermCursor> terms = new Vector<TermCursor>();
+		for (int q = 0; q < queryWords.length; q++) {
+			if (Double.isNaN(queryWeights[q]) || QueryScorer.isRepeated(queryWords, q)) {
+				continue;
+			}
+			int entry = findTerm(queryWords[q]);
+			if (entry < 0) {
+				continue;
+			}
+
+			double maxWeight = buffer.getDouble(entry + 32);
+			double queryWeight = queryWeights[q];
+			double upperBound = Double.isNaN(maxWeight) ? Double.POSITIVE_INFINITY : maxWeight * queryWeight * queryWeight;
+			terms.add(new FlatTermCursor(buffer, buffer.getInt(entry + 12), buffer.getInt(entry + 8), queryWeight, upperBound));
+		}
+
+		return terms.toArray(new TermCursor[terms.size()]);
+	}
+
+	public int[] getTermPages(String[] term) throws IOException {
+		if (term.length != 1) {
+			return getPhrasePages(term).ids();
+		}
+
+		int entry = findTerm(term[0]);
+		if (entry < 0) {
+			return new int[0];
+		}
+
+		int start = buffer.getInt(entry + 12);
+		int[] pages = new int[buffer.getInt(entry + 8)];
+		for (int i = 0; i < pages.length; i++) {
+			pages[i] = buffer.getInt(start + i * 4);
+		}
+
+		return pages;
+	}
+
+	//the pages with the phrase in their title or body, see DataManager.getPhrasePages
+	public PostingList getPhrasePages(String[] phraseWords) throws IOException {
+		PostingList result = new PostingList();
+
+		int[] entries = new int[phraseWords.length];
+		for (int i = 0; i < phraseWords.length; i++) {
+			entries[i] = findTerm(phraseWords[i]);
+			if (entries[i] < 0) {
+				return result;
+			}
+		}
+
+		if (entries.length > 0) {
+			//the title lists first, then the body lists, in the same order as DataManager
+			PostingList[] lists = new PostingList[entries.length];
+			for (int offset : new int[] {24, 16}) {
+				for (int k = 0; k < entries.length; k++) {
+					lists[k] = readPostings(buffer.getInt(entries[k] + offset), buffer.getInt(entries[k] + offset + 4));
+				}
+				PostingList.addPhraseMatches(lists, result);
+			}
+		}
+
+		return result;
+	}
+
+	//everything the search page shows about a page
+	private SearchResult getResult(int pageID, double score) {
+		String[] record = getRecord(pageID, 5);
+
+		List<String> childLinks = new Vector<String>();
+		int entry = pageEntry(pageID);
+		int linksStart = buffer.getInt(entry + 20);
+		for (int i = 0; i < buffer.getInt(entry + 24); i++) {
+			childLinks.add(getRecord(buffer.getInt(linksStart + i * 4), 1)[0]);
+		}
+
+		return new SearchResult(pageID, score, record[0], record[1], record[2], record[3], record[4], childLinks);
+	}
+
+	//the first count fields of the record of the page, "" for those it does not have
+	private String[] getRecord(int pageID, int count) {
+		int entry = pageEntry(pageID);
+		int pos = buffer.getInt(entry + 12);
+		int end = pos + buffer.getInt(entry + 16);
+
+		String[] result = new String[count];
+		for (int i = 0; i < count; i++) {
+			if (pos < end) {
+				int length = buffer.getInt(pos);
+				result[i] = new String(readBytes(pos + 4, length), StandardCharsets.UTF_8);
+				pos += 4 + length;
+			} else {
+				result[i] = "";
+			}
+		}
+
+		return result;
+	}
+
+	private PostingList readPostings(int start, int length) {
+		return PostingList.fromBytes(length == 0 ? null : readBytes(start, length));
+	}
+
+	private byte[] readBytes(int start, int length) {
+		byte[] result = new byte[length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(start);
+		view.get(result);
+		return result;
+	}
+
+	private int pageEntry(int pageID) {
+		return pageTable + pageID * PAGE_ENTRY_SIZE;
+	}
+
+	//the words that start with the prefix, which are next to each other in the term table
+	public List<String> getWordsWithPrefix(String prefix, int maxWords) {
+		byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+
+		List<String> result = new Vector<String>();
+		for (int i = lowerBound(bytes); i < termCount && result.size() < maxWords; i++) {
+			int entry = termTable + i * TERM_ENTRY_SIZE;
+			int length = buffer.getInt(entry + 4);
+			if (length < bytes.length || compareWord(entry, bytes.length, bytes) != 0) {
+				break;
+			}
+			result.add(new String(readBytes(buffer.getInt(entry), length), StandardCharsets.UTF_8));
+		}
+
+		return result;
+	}
+
+	//where the entry of the word is in the term table, or -1 if the word is not in the index
+	//the words are compared with the bytes in the file, without turning them into strings
+	private int findTerm(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		int i = lowerBound(bytes);
+		if (i == termCount) {
+			return -1;
+		}
+
+		int entry = termTable + i * TERM_ENTRY_SIZE;
+		return compareWord(entry, buffer.getInt(entry + 4), bytes) == 0 ? entry : -1;
+	}
+
+	//the index of the first word in the term table that is not before the given bytes, or termCount if there is none
+	private int lowerBound(byte[] bytes) {
+		int low = 0;
+		int high = termCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int entry = termTable + mid * TERM_ENTRY_SIZE;
+			if (compareWord(entry, buffer.getInt(entry + 4), bytes) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	//compares the first length bytes of the word of the entry with the given bytes
+	private int compareWord(int entry, int length, byte[] bytes) {
+		int start = buffer.getInt(entry);
+		for (int i = 0; i < length && i < bytes.length; i++) {
+			int cmp = (buffer.get(start + i) & 0xFF) - (bytes[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+
+		return length - bytes.length;
+	}
+}
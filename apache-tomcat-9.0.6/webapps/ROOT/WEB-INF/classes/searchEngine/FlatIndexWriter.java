@@ -0,0 +1,186 @@
+/*
+ * Exports a finished database to the flat file that a FlatIndex maps, see FlatIndex for the layout.
+ * The words, pages and records are written one after the other as they are read from the database, and the
+ * term and page tables, which point into them, follow at the end; the header is filled in last.
+ * The file is written under a temporary name and renamed over the old one when it is complete, so a search that
+ * maps it always sees a whole file, and one that still has the old file mapped keeps reading that.
+ */
+
+package searchEngine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+
+public class FlatIndexWriter {
+
+	//writes the database to the file, for the given generation of the segment list
+	//the database has to be finalized and have no deleted pages, e.g. the only segment of a merged index
+	public static void write(DataManager db, long generation, File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			out.write(new byte[FlatIndex.HEADER_SIZE]);
+
+			//the words in the order of their bytes, which is the order findTerm searches in
+			List<byte[]> words = new Vector<byte[]>();
+			for (String word : db.getWords()) {
+				words.add(word.getBytes(StandardCharsets.UTF_8));
+			}
+			Collections.sort(words, new Comparator<byte[]>() {
+				public int compare(byte[] a, byte[] b) {
+					for (int i = 0; i < a.length && i < b.length; i++) {
+						if (a[i] != b[i]) {
+							return (a[i] & 0xFF) - (b[i] & 0xFF);
+						}
+					}
+					return a.length - b.length;
+				}
+			});
+
+			//8 ints for each word that is on a page, see FlatIndex
+			IntList termEntries = new IntList();
+			Vector<Double> maxWeights = new Vector<Double>();
+			for (byte[] bytes : words) {
+				int wordID = db.lookupWordID(new String(bytes, StandardCharsets.UTF_8));
+				PostingList bodyPages = db.getPostings(DataManager.BODY_ID, wordID);
+				PostingList titlePages = db.getPostings(DataManager.TITLE_ID, wordID);
+				if (bodyPages.size() == 0 && titlePages.size() == 0) {
+					continue;
+				}
+
+				termEntries.add(out.size());
+				termEntries.add(bytes.length);
+				out.write(bytes);
+
+				TermCursor cursor = new TermCursor(bodyPages, titlePages, 0, 0);
+				int[] freqs = new int[cursor.size()];
+				termEntries.add(cursor.size());
+				termEntries.add(out.size());
+				for (int i = 0; cursor.page() != TermCursor.END; i++, cursor.next()) {
+					out.writeInt(cursor.page());
+					freqs[i] = cursor.freq() << 1 | (cursor.inTitle() ? 1 : 0);
+				}
+				for (int freq : freqs) {
+					out.writeInt(freq);
+				}
+
+				for (PostingList postings : new PostingList[] {bodyPages, titlePages}) {
+					byte[] data = postings.size() == 0 ? new byte[0] : postings.toBytes();
+					termEntries.add(out.size());
+					termEntries.add(data.length);
+					out.write(data);
+				}
+
+				maxWeights.add(db.getMaxWeight(wordID));
+			}
+
+			//the pages that can be found, and the pages they link to, whose urls the results show
+			int[] documents = db.getDocuments();
+			int pageCount = documents.length == 0 ? 0 : documents[documents.length - 1] + 1;
+			int[][] links = new int[pageCount][];
+			for (int pageID : documents) {
+				links[pageID] = db.getLinks(pageID);
+				for (int childID : links[pageID]) {
+					pageCount = Math.max(pageCount, childID + 1);
+				}
+			}
+			boolean[] linked = new boolean[pageCount];
+			for (int pageID : documents) {
+				for (int childID : links[pageID]) {
+					linked[childID] = true;
+				}
+			}
+
+			//4 ints for each page, where its record starts and its length, where its links start and their number
+			int[] pageEntries = new int[pageCount * 4];
+			for (int pageID = 0; pageID < pageCount; pageID++) {
+				boolean found = pageID < links.length && links[pageID] != null;
+				if (!found && !linked[pageID]) {
+					continue;
+				}
+
+				pageEntries[pageID * 4] = out.size();
+				writeField(out, db.getURL(pageID));
+				if (found) {
+					writeField(out, db.getPageTitle(pageID));
+					writeField(out, db.getModifiedDate(pageID));
+					writeField(out, db.getPageSize(pageID));
+					writeField(out, db.retrieveMostFreqKeywords(pageID));
+				}
+				pageEntries[pageID * 4 + 1] = out.size() - pageEntries[pageID * 4];
+
+				if (found) {
+					pageEntries[pageID * 4 + 2] = out.size();
+					pageEntries[pageID * 4 + 3] = links[pageID].length;
+					for (int childID : links[pageID]) {
+						out.writeInt(childID);
+					}
+				}
+			}
+
+			int termTable = out.size();
+			for (int i = 0; i < maxWeights.size(); i++) {
+				for (int j = 0; j < 8; j++) {
+					out.writeInt(termEntries.get(i * 8 + j));
+				}
+				Double maxWeight = maxWeights.get(i);
+				out.writeDouble(maxWeight == null ? Double.NaN : maxWeight);
+			}
+
+			int pageTable = out.size();
+			for (int pageID = 0; pageID < pageCount; pageID++) {
+				boolean found = pageID < links.length && links[pageID] != null;
+				out.writeDouble(found ? db.getNorm(pageID) : 0);
+				out.writeInt(found ? db.getMaxTF(pageID) : 1);
+				for (int j = 0; j < 4; j++) {
+					out.writeInt(pageEntries[pageID * 4 + j]);
+				}
+				out.writeInt(0);
+			}
+
+			//the size saturates at Integer.MAX_VALUE, past which the offsets would not fit in an int
+			out.flush();
+			if (out.size() == Integer.MAX_VALUE) {
+				throw new IOException("the index is too large for a flat file");
+			}
+
+			RandomAccessFile header = new RandomAccessFile(temp, "rw");
+			try {
+				header.writeInt(FlatIndex.MAGIC);
+				header.writeInt(FlatIndex.VERSION);
+				header.writeLong(generation);
+				header.writeInt(db.getDocumentCount());
+				header.writeInt(maxWeights.size());
+				header.writeInt(pageCount);
+				header.writeInt(termTable);
+				header.writeInt(pageTable);
+				header.getFD().sync();
+			} finally {
+				header.close();
+			}
+		} finally {
+			fileOut.close();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	//a field of a page record: the length of its UTF-8 bytes, then the bytes
+	private static void writeField(DataOutputStream out, String field) throws IOException {
+		byte[] data = field.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(data.length);
+		out.write(data);
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Walks the pages of one query word in a FlatIndex, reading them straight from the mapped file:
+ * the pages of the word are stored one after the other as ints, followed by the frequency on each page
+ * (shifted left by one, with the lowest bit set if the word is in the title of the page).
+ * Nothing is copied onto the heap, whatever the number of pages.
+ */
+
+package searchEngine;
+
+import java.nio.ByteBuffer;
+
+public class FlatTermCursor extends TermCursor {
+
+	private ByteBuffer buffer;
+	private int pagesStart;
+	private int freqsStart;
+	private int size;
+	private int pos = 0;
+
+	//start = where the pages of the word start in the buffer, size = the number of pages
+	public FlatTermCursor(ByteBuffer buffer, int start, int size, double idf, double upperBound) {
+		super(idf, upperBound);
+		this.buffer = buffer;
+		this.pagesStart = start;
+		this.freqsStart = start + size * 4;
+		this.size = size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int page() {
+		return pos < size ? pageAt(pos) : END;
+	}
+
+	public int freq() {
+		return buffer.getInt(freqsStart + pos * 4) >>> 1;
+	}
+
+	public boolean inTitle() {
+		return (buffer.getInt(freqsStart + pos * 4) & 1) != 0;
+	}
+
+	public void next() {
+		pos++;
+	}
+
+	//the same galloping search as SortedIds.seek, over the pages in the buffer
+	public int advance(int target) {
+		if (pos >= size || pageAt(pos) >= target) {
+			return page();
+		}
+
+		int low = pos;
+		int step = 1;
+		while (low + step < size && pageAt(low + step) < target) {
+			low += step;
+			step *= 2;
+		}
+
+		int high = Math.min(low + step, size);
+		low++;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (pageAt(mid) < target) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		pos = low;
+		return page();
+	}
+
+	private int pageAt(int i) {
+		return buffer.getInt(pagesStart + i * 4);
+	}
+}
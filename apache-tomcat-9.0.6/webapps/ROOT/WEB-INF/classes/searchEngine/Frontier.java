@@ -0,0 +1,260 @@
+/*
+ * The queue of pages still to be crawled, shared by the crawler threads.
+ * The pages of each host (protocol, host and port) wait in a queue of their own in the order they were found,
+ * and the hosts take turns, so the crawl goes breadth-first through all of its hosts at once.
+ * To be polite, only a few pages of a host are fetched at the same time and a page of a host is only handed out
+ * some time after the last one (see setPoliteness), longer if the host's robots.txt asks for it.
+ * Pages robots.txt does not allow are skipped; it is read the first time a page of its host is about to be handed out.
+ * Pages are handed out until the page limit is reached.
+ * The crawl commits the state of the frontier with its pages (see getState), so a crawl that stops
+ * can be started again from there (see fromState).
+ */
+
+package searchEngine;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class Frontier {
+
+	//how many pages of a host are fetched at the same time, and the milliseconds between handing out two pages of it
+	public static final int DEFAULT_HOST_CONNECTIONS = 2;
+	public static final long DEFAULT_CRAWL_DELAY = 100;
+
+	//the pages waiting on one host
+	private static class Host {
+		String name;
+		LinkedList<String> pagesToVisit = new LinkedList<String>();
+		//pages handed out that are still being fetched
+		int active = 0;
+		//when the next page can be handed out
+		long nextFetch = 0;
+		//null until robots.txt is read
+		Robots robots;
+		boolean readingRobots = false;
+
+		Host(String name) {
+			this.name = name;
+		}
+	}
+
+	private Map<String, Host> hosts = new HashMap<String, Host>();
+	//the hosts that have pages waiting, in the order they take turns
+	private LinkedList<Host> waiting = new LinkedList<Host>();
+
+	//in the order they were handed out
+	private Set<String> pagesVisited = new LinkedHashSet<String>();
+	//the visited pages whose results are in the database, see stored()
+	private Set<String> pagesStored = new HashSet<String>();
+	//the pages robots.txt does not allow
+	private Set<String> pagesBlocked = new HashSet<String>();
+	private int maxPages;
+
+	private int hostConnections = DEFAULT_HOST_CONNECTIONS;
+	private long crawlDelay = DEFAULT_CRAWL_DELAY;
+
+	//number of pages handed out whose links have not been added yet, and of robots.txt files being read
+	private int inProgress = 0;
+
+	public Frontier(String url, int maxPages) {
+		this.maxPages = maxPages;
+		add(url);
+	}
+
+	private Frontier(int maxPages) {
+		this.maxPages = maxPages;
+	}
+
+	//the frontier of a crawl from the state it saved, with the pages that were stored counted as visited
+	public static Frontier fromState(String state, int maxPages) {
+		Frontier result = new Frontier(maxPages);
+		for (String line : state.split("\n")) {
+			if (line.startsWith("done ")) {
+				result.pagesVisited.add(line.substring(5));
+				result.pagesStored.add(line.substring(5));
+			} else if (line.startsWith("next ")) {
+				result.add(line.substring(5));
+			}
+		}
+
+		return result;
+	}
+
+	//at most hostConnections pages of a host are fetched at once, and a page of a host is handed out
+	//at least crawlDelay milliseconds after the one before it (or the Crawl-delay of its robots.txt if that is longer)
+	public synchronized void setPoliteness(int hostConnections, long crawlDelay) {
+		this.hostConnections = Math.max(hostConnections, 1);
+		this.crawlDelay = crawlDelay;
+		notifyAll();
+	}
+
+	//returns the next page to crawl, waiting while other threads may still find new links
+	//or while every host with pages waiting has to be left alone for now
+	//returns null once the page limit is reached or there is nothing left to crawl
+	public String next() throws InterruptedException {
+		while (true) {
+			Host host;
+			synchronized (this) {
+				host = nextHost();
+				if (host == null) {
+					return null;
+				}
+
+				if (host.robots != null) {
+					String nextUrl = host.pagesToVisit.removeFirst();
+					if (!host.pagesToVisit.isEmpty()) {
+						this.waiting.addLast(host);
+					}
+
+					if (this.pagesVisited.contains(nextUrl) || this.pagesBlocked.contains(nextUrl)) {
+						continue;
+					}
+					if (!host.robots.isAllowed(nextUrl)) {
+						this.pagesBlocked.add(nextUrl);
+						continue;
+					}
+
+					this.pagesVisited.add(nextUrl);
+					this.inProgress++;
+					host.active++;
+					host.nextFetch = System.currentTimeMillis() + Math.max(this.crawlDelay, host.robots.getCrawlDelay());
+					return nextUrl;
+				}
+
+				//keeps its turn while its robots.txt is read
+				host.readingRobots = true;
+				this.waiting.addFirst(host);
+				this.inProgress++;
+			}
+
+			//read without holding the lock, so the other threads go on with the other hosts
+			Robots robots = Robots.read(host.name);
+			synchronized (this) {
+				host.robots = robots;
+				host.readingRobots = false;
+				this.inProgress--;
+				notifyAll();
+			}
+		}
+	}
+
+	//takes the first host whose turn it is off the waiting hosts, waiting until there is one
+	//returns null once the page limit is reached or there is nothing left to crawl
+	private Host nextHost() throws InterruptedException {
+		while (this.pagesVisited.size() < this.maxPages) {
+			long now = System.currentTimeMillis();
+			long wakeUp = Long.MAX_VALUE;
+
+			for (Iterator<Host> it = this.waiting.iterator(); it.hasNext(); ) {
+				Host host = it.next();
+				if (host.readingRobots || host.active >= this.hostConnections) {
+					continue;
+				}
+				if (host.robots != null && host.nextFetch > now) {
+					wakeUp = Math.min(wakeUp, host.nextFetch);
+					continue;
+				}
+
+				it.remove();
+				return host;
+			}
+
+			if (this.waiting.isEmpty() && this.inProgress == 0) {
+				return null;
+			}
+			//new links, a page that is done or a host whose delay is over
+			wait(wakeUp == Long.MAX_VALUE ? 0 : Math.max(wakeUp - now, 1));
+		}
+
+		return null;
+	}
+
+	public synchronized void addAll(List<String> links) {
+		for (String link : links) {
+			if (!this.pagesVisited.contains(link) && !this.pagesBlocked.contains(link)) {
+				add(link);
+			}
+		}
+		notifyAll();
+	}
+
+	private void add(String url) {
+		String name = hostOf(url);
+		Host host = this.hosts.get(name);
+		if (host == null) {
+			host = new Host(name);
+			this.hosts.put(name, host);
+		}
+
+		if (host.pagesToVisit.isEmpty()) {
+			this.waiting.addLast(host);
+		}
+		host.pagesToVisit.add(url);
+	}
+
+	//the protocol, host and port of the url, which robots.txt and the politeness limits are for
+	private static String hostOf(String url) {
+		try {
+			URL parsed = new URL(url);
+			return parsed.getProtocol() + "://" + parsed.getAuthority().toLowerCase();
+		} catch (MalformedURLException | NullPointerException e) {
+			return "";
+		}
+	}
+
+	//called once a page handed out by next() has been fetched, which frees its place for another page of its host
+	public synchronized void fetched(String url) {
+		Host host = this.hosts.get(hostOf(url));
+		if (host != null) {
+			host.active--;
+		}
+		notifyAll();
+	}
+
+	//called once the links of a page handed out by next() have been added
+	public synchronized void done() {
+		this.inProgress--;
+		notifyAll();
+	}
+
+	public synchronized int visited() {
+		return this.pagesVisited.size();
+	}
+
+	//called by the thread that writes the database once the results of a page handed out by next() are written
+	public synchronized void stored(String url) {
+		this.pagesStored.add(url);
+	}
+
+	//the pages that are stored, and the ones still to visit host by host in the order they will be handed out, one per line
+	//the pages handed out but not stored yet go back to the front of the queue, since a crawl started again
+	//from the state has to visit them again
+	public synchronized String getState() {
+		StringBuilder result = new StringBuilder();
+		for (String page : this.pagesVisited) {
+			if (this.pagesStored.contains(page)) {
+				result.append("done ").append(page).append('\n');
+			}
+		}
+		for (String page : this.pagesVisited) {
+			if (!this.pagesStored.contains(page)) {
+				result.append("next ").append(page).append('\n');
+			}
+		}
+		for (Host host : this.waiting) {
+			for (String page : host.pagesToVisit) {
+				result.append("next ").append(page).append('\n');
+			}
+		}
+
+		return result.toString();
+	}
+}
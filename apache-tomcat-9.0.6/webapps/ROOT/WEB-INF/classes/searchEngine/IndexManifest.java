@@ -0,0 +1,245 @@
+/*
+ * The list of segments that make up the index, kept in the file "segments" of the index directory.
+ * A segment is a database written by one run of the indexer, which is never changed once it is in the list.
+ * When a later run crawls a page again, the old copy of the page is marked deleted in a file of page ids next to
+ * the segment, and the list points to the new deleted file.
+ *
+ * The file looks like:
+ * 	generation 4
+ * 	next 3
+ * 	seg_0 seg_0_4.del
+ * 	seg_2 -
+ * generation goes up with every change, next is the number of the next segment, then each segment has a line with
+ * its name and its deleted file, or "-" if none of its pages are deleted. Segments are listed oldest first.
+ * A new list is written to a temporary file and renamed over the old one, so a reader always sees a whole list.
+ */
+
+package searchEngine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+public class IndexManifest {
+
+	public static final String FILE_NAME = "segments";
+	private static final String TEMP_FILE_NAME = "segments.tmp";
+
+	//every file of a segment starts with this, see isSegmentFile
+	private static final String SEGMENT_PREFIX = "seg_";
+
+	private boolean exists = false;
+	private long generation = 0;
+	private int nextSegment = 0;
+	private List<String> segments = new Vector<String>();
+	//segment name -> the file of its deleted pages
+	private Map<String, String> deleteFiles = new HashMap<String, String>();
+
+	private IndexManifest() {
+
+	}
+
+	//the list in the given index directory, an empty one if the index has not been written yet
+	public static IndexManifest read(File dir) throws IOException {
+		IndexManifest result = new IndexManifest();
+		File file = new File(dir, FILE_NAME);
+		if (!file.exists()) {
+			return result;
+		}
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			result.generation = Long.parseLong(in.readLine().split(" ")[1]);
+			result.nextSegment = Integer.parseInt(in.readLine().split(" ")[1]);
+
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] split = line.split(" ");
+				if (split.length != 2) {
+					throw new IOException("bad line in " + file + ": " + line);
+				}
+				result.segments.add(split[0]);
+				if (!split[1].equals("-")) {
+					result.deleteFiles.put(split[0], split[1]);
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("could not read " + file + ": " + e);
+		} finally {
+			in.close();
+		}
+		result.exists = true;
+
+		return result;
+	}
+
+	//writes the list as the next generation
+	void write(File dir) throws IOException {
+		File temp = new File(dir, TEMP_FILE_NAME);
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writer.write("generation " + (generation + 1) + "\n");
+			writer.write("next " + nextSegment + "\n");
+			for (String segment : segments) {
+				String deleteFile = deleteFiles.get(segment);
+				writer.write(segment + " " + (deleteFile == null ? "-" : deleteFile) + "\n");
+			}
+			writer.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		Files.move(temp.toPath(), new File(dir, FILE_NAME).toPath(),
+				StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		generation++;
+		exists = true;
+	}
+
+	public boolean exists() {
+		return exists;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	//the names of the segments, oldest first
+	public List<String> getSegments() {
+		return segments;
+	}
+
+	//the file of the segment's deleted pages, or null if none are deleted
+	public String getDeleteFile(String segment) {
+		return deleteFiles.get(segment);
+	}
+
+	//a copy to make changes to, so that this list stays as it is until the new one has been written
+	IndexManifest copy() {
+		IndexManifest result = new IndexManifest();
+		result.exists = exists;
+		result.generation = generation;
+		result.nextSegment = nextSegment;
+		result.segments.addAll(segments);
+		result.deleteFiles.putAll(deleteFiles);
+		return result;
+	}
+
+	//hands out the name of a new segment
+	String newSegmentName() {
+		return SEGMENT_PREFIX + nextSegment++;
+	}
+
+	//makes sure newSegmentName() does not hand out the name of a segment that is not in the list yet,
+	//e.g. the segment of a crawl that is going on from where it stopped
+	void reserveSegmentName(String segment) {
+		try {
+			nextSegment = Math.max(nextSegment, Integer.parseInt(segment.substring(SEGMENT_PREFIX.length())) + 1);
+		} catch (RuntimeException e) {
+			//not a name newSegmentName() gives out
+		}
+	}
+
+	void addSegment(String segment) {
+		segments.add(segment);
+	}
+
+	void removeSegment(String segment) {
+		segments.remove(segment);
+		deleteFiles.remove(segment);
+	}
+
+	//puts the segment that the given segments were merged into in the place of the newest of them,
+	//so that it stays older than the segments published while the merge ran; merged = null just removes them
+	void replaceSegments(List<String> old, String merged) {
+		int index = -1;
+		for (String segment : old) {
+			index = Math.max(index, segments.indexOf(segment));
+		}
+		if (merged != null) {
+			segments.add(index + 1, merged);
+		}
+
+		for (String segment : old) {
+			removeSegment(segment);
+		}
+	}
+
+	//names a new deleted file for the segment, for the generation that is written next
+	String newDeleteFile(String segment) {
+		String file = segment + "_" + (generation + 1) + ".del";
+		deleteFiles.put(segment, file);
+		return file;
+	}
+
+	//the files of the index directory that the segments in the list use
+	public Set<String> getFiles() {
+		Set<String> result = new HashSet<String>();
+		for (String segment : segments) {
+			result.add(segment + ".db");
+			result.add(segment + ".lg");
+			if (deleteFiles.containsKey(segment)) {
+				result.add(deleteFiles.get(segment));
+			}
+		}
+
+		return result;
+	}
+
+	//true for the files of segments and their deleted pages, which are the files that may be cleaned up
+	public static boolean isSegmentFile(String fileName) {
+		return fileName.startsWith(SEGMENT_PREFIX);
+	}
+
+	//the deleted pages of a segment in id order, an empty array if file is null
+	public static int[] readDeletes(File file) throws IOException {
+		if (file == null) {
+			return new int[0];
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			int[] result = new int[in.readInt()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = in.readInt();
+			}
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	static void writeDeletes(File file, int[] pageIDs) throws IOException {
+		FileOutputStream fileOut = new FileOutputStream(file);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			out.writeInt(pageIDs.length);
+			for (int pageID : pageIDs) {
+				out.writeInt(pageID);
+			}
+			out.flush();
+			fileOut.getFD().sync();
+		} finally {
+			fileOut.close();
+		}
+	}
+}
@@ -15,10 +15,26 @@ public class IndexProgram {
 		
 		try {
 			
+			//the number of crawler threads can be given as the first argument
+			//and a limit on how many megabytes per second merging segments may write as the second
+			//every run adds a segment to the index, which the search page picks up once it is published
 			Spider spider = new Spider();
-			DataManager dm = spider.search("http://www.cse.ust.hk/");
-			dm.printAll();
-			dm.finalize();
+			int threads = args.length > 0 ? Integer.parseInt(args[0]) : Spider.DEFAULT_CRAWL_THREADS;
+			IndexWriter writer = new IndexWriter();
+			try {
+				if (args.length > 1) {
+					writer.getMergeScheduler().setMaxMBPerSec(Double.parseDouble(args[1]));
+				}
+
+				DataManager dm = spider.search("http://www.cse.ust.hk/", threads, writer);
+				dm.printAll();
+				writer.publish(dm);
+				writer.getMergeScheduler().waitForMerges();
+			} catch (InterruptedException e) {
+				System.err.println(e.toString());
+			} finally {
+				writer.close();
+			}
 			
 			
 			/*
@@ -0,0 +1,230 @@
+/*
+ * The segments of the index as they were in one generation of the segment list (see IndexManifest),
+ * with the pages deleted from each of them.
+ * A search acquires the snapshot it starts with and releases it when it is done, so the indexer can publish
+ * new segments at any time: a newer snapshot is opened for the searches that come after, and the segments
+ * that only the old snapshot has are closed when its last search releases it.
+ *
+ * The idf of a word is counted over all the segments (see getDocumentFrequency), while the length of a page vector is
+ * the one calculated when its segment was written. Until the segments are merged, a page's score can therefore be a
+ * little off from the score it would get in a single database.
+ */
+
+package searchEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.Vector;
+
+public class IndexSnapshot implements SearchIndex, CollectionStatistics, PrefixLookup {
+
+	private long generation;
+	private SegmentReader[] segments;
+	//the deleted pages of each segment, in id order
+	private int[][] deletedPages;
+	private int docCount;
+
+	//the number of searches using the snapshot, plus one for the Searcher while it is the current snapshot
+	private int refCount = 1;
+
+	IndexSnapshot(long generation, SegmentReader[] segments, int[][] deletedPages) throws IOException {
+		this.generation = generation;
+		this.segments = segments;
+		this.deletedPages = deletedPages;
+
+		docCount = 0;
+		for (int i = 0; i < segments.length; i++) {
+			docCount += segments[i].getDocumentCount() - deletedPages[i].length;
+		}
+	}
+
+	//opens the segments in the list, sharing the ones that are already open in the previous snapshot (which may be null)
+	public static IndexSnapshot open(File dir, IndexManifest manifest, IndexSnapshot previous) throws IOException {
+		Map<String, SegmentReader> open = new HashMap<String, SegmentReader>();
+		if (previous != null) {
+			for (SegmentReader segment : previous.segments) {
+				open.put(segment.getName(), segment);
+			}
+		}
+
+		List<String> names = manifest.getSegments();
+		SegmentReader[] segments = new SegmentReader[names.size()];
+		int[][] deletedPages = new int[names.size()][];
+		int opened = 0;
+		try {
+			for (; opened < segments.length; opened++) {
+				String name = names.get(opened);
+				String deleteFile = manifest.getDeleteFile(name);
+				deletedPages[opened] = IndexManifest.readDeletes(deleteFile == null ? null : new File(dir, deleteFile));
+
+				if (open.containsKey(name)) {
+					segments[opened] = open.get(name);
+					segments[opened].incRef();
+				} else {
+					//JDBM would create a missing segment, e.g. one that a newer list has already dropped
+					if (!new File(dir, name + ".db").exists()) {
+						throw new IOException("segment " + name + " is missing in " + dir);
+					}
+					segments[opened] = new SegmentReader(name, new File(dir, name).getPath());
+				}
+			}
+
+			return new IndexSnapshot(manifest.getGeneration(), segments, deletedPages);
+		} catch (IOException e) {
+			for (int i = 0; i < opened; i++) {
+				segments[i].decRef();
+			}
+			throw e;
+		}
+	}
+
+	//a database written before the index was split into segments, searched as the only segment
+	public static IndexSnapshot openDatabase(String name) throws IOException {
+		return new IndexSnapshot(0, new SegmentReader[] {new SegmentReader(name, name)}, new int[][] {new int[0]});
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public synchronized void acquire() {
+		if (refCount == 0) {
+			throw new IllegalStateException("the snapshot has been closed");
+		}
+		refCount++;
+	}
+
+	public void release() throws IOException {
+		synchronized (this) {
+			refCount--;
+			if (refCount > 0) {
+				return;
+			}
+		}
+
+		for (SegmentReader segment : segments) {
+			segment.decRef();
+		}
+	}
+
+	int size() {
+		return segments.length;
+	}
+
+	SegmentReader getSegment(int i) {
+		return segments[i];
+	}
+
+	int[] getDeletedPages(int i) {
+		return deletedPages[i];
+	}
+
+	//the number of pages that are not deleted in all the segments
+	public int getDocumentCount() {
+		return docCount;
+	}
+
+	public int getDocumentFrequency(String word) throws IOException {
+		int docFreq = 0;
+		for (int i = 0; i < segments.length; i++) {
+			docFreq += segments[i].getDocumentFrequency(word, deletedPages[i]);
+		}
+
+		return docFreq;
+	}
+
+	//the words of all the segments that start with the prefix
+	//a word that is only on deleted pages may be among them, it then has no pages to match
+	public List<String> getWordsWithPrefix(String prefix, int maxWords) throws IOException {
+		TreeSet<String> words = new TreeSet<String>();
+		for (SegmentReader segment : segments) {
+			words.addAll(segment.getWordsWithPrefix(prefix, maxWords));
+		}
+
+		List<String> result = new Vector<String>();
+		for (String word : words) {
+			if (result.size() == maxWords) {
+				break;
+			}
+			result.add(word);
+		}
+
+		return result;
+	}
+
+	//ranks the pages of all the segments for the query, best first
+	//every segment gives its own best maxResults pages, weighting the query words by their idf in the whole index,
+	//and the best of those are the results; pages with the same score are in segment order
+	//the prefixes of the query are expanded with the words of all the segments, so every segment ranks the same words
+	public List<SearchResult> search(Query query, int maxResults) throws IOException {
+		query = query.expand(this);
+		double[] queryWeights = DataManager.getQueryWeights(query.getWords(), this);
+
+		List<Hit> hits = new Vector<Hit>();
+		for (int i = 0; i < segments.length; i++) {
+			TopKHeap topPages = segments[i].search(query, queryWeights, deletedPages[i], maxResults);
+			int[] pages = new int[topPages.size()];
+			double[] scores = new double[topPages.size()];
+			int count = topPages.drain(pages, scores);
+			for (int k = 0; k < count; k++) {
+				hits.add(new Hit(i, pages[k], scores[k]));
+			}
+		}
+
+		//the sort is stable, so pages with the same score keep their order
+		Collections.sort(hits, new Comparator<Hit>() {
+			public int compare(Hit a, Hit b) {
+				return Double.compare(b.score, a.score);
+			}
+		});
+
+		List<SearchResult> results = new Vector<SearchResult>();
+		for (int i = 0; i < hits.size() && i < maxResults; i++) {
+			Hit hit = hits.get(i);
+			results.add(segments[hit.segment].getResult(hit.pageID, hit.score));
+		}
+
+		return results;
+	}
+
+	//the validators of every crawled page, from the newest segment that crawled it
+	public Map<String, String[]> getCacheValidators() throws IOException {
+		Map<String, String[]> result = new HashMap<String, String[]>();
+		for (SegmentReader segment : segments) {
+			result.putAll(segment.getCacheValidators());
+		}
+
+		return result;
+	}
+
+	//the links of the page when it was last crawled, from the newest segment that crawled it
+	public List<String> getLinkedURLs(String url) throws IOException {
+		for (int i = segments.length - 1; i >= 0; i--) {
+			List<String> links = segments[i].getLinkedURLs(url);
+			if (links != null) {
+				return links;
+			}
+		}
+
+		return new Vector<String>();
+	}
+
+	private static class Hit {
+
+		int segment;
+		int pageID;
+		double score;
+
+		Hit(int segment, int pageID, double score) {
+			this.segment = segment;
+			this.pageID = pageID;
+			this.score = score;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+/*
+ * Adds the pages of a crawl to the index as a new segment.
+ * The crawl is written to a new database (newSegment) that no search can see, and publish() then finishes it
+ * and writes the segment list that has it, with the older copies of its pages marked deleted. The segments already
+ * in the list are never written to, so searches can go on while the indexer runs (see IndexSnapshot).
+ *
+ * The name of the segment a crawl is writing is kept in the file "crawling" until it is published. A crawl that stops
+ * before that commits its pages as it goes (see Spider.setCommitBatch), so the next newSegment() hands out the same
+ * segment again and the crawl goes on from its last commit.
+ *
+ * Only one IndexWriter can have the index open at a time, which is checked with a lock on the file "write.lock".
+ * Files that no segment list uses any more are deleted when the writer opens the index and after every publish.
+ * A search that still has an old segment open keeps reading it, as deleting an open file leaves it readable
+ * until it is closed; where the file cannot be deleted yet, it is tried again the next time.
+ *
+ * Segments are merged in the background (see MergeScheduler). A merge copies its segments into a new one without
+ * holding up the crawl, and then replaces them in the segment list (commitMerge) the same way publish() adds one.
+ *
+ * exportFlatIndex() merges the whole index into one segment and exports it to a flat file (see FlatIndex),
+ * which the search page maps instead of opening the segment, until the next segment list is published.
+ */
+
+package searchEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+public class IndexWriter implements CrawlHistory {
+
+	//the directory of the index, relative to where the indexer and the webapp run
+	public static final String INDEX_DIR = "index";
+
+	private static final String LOCK_FILE = "write.lock";
+	private static final String CRAWL_FILE = "crawling";
+
+	private File dir;
+	private FileChannel lockChannel;
+	private FileLock lock;
+
+	private IndexManifest manifest;
+	//the published segments, read for the crawl history and to find the pages a new segment replaces
+	private IndexSnapshot snapshot;
+	//the names of the segments handed out by newSegment() or startMerge() that have not been published
+	private Set<String> pending = new HashSet<String>();
+
+	private MergeScheduler mergeScheduler = new MergeScheduler(this);
+
+	public IndexWriter() throws IOException {
+		this(INDEX_DIR);
+	}
+
+	public IndexWriter(String path) throws IOException {
+		dir = new File(path);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("could not create the index directory " + dir);
+		}
+
+		lockChannel = FileChannel.open(new File(dir, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			lock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+		if (lock == null) {
+			lockChannel.close();
+			throw new IOException("the index in " + dir + " is being written by another indexer");
+		}
+
+		try {
+			manifest = IndexManifest.read(dir);
+			String crawling = getCrawlSegment();
+			if (crawling != null) {
+				manifest.reserveSegmentName(crawling);
+			}
+			snapshot = IndexSnapshot.open(dir, manifest, null);
+		} catch (IOException e) {
+			lock.release();
+			lockChannel.close();
+			throw e;
+		}
+
+		//segments of an indexer that stopped before publishing them
+		deleteUnusedFiles();
+		mergeScheduler.maybeMerge();
+	}
+
+	public MergeScheduler getMergeScheduler() {
+		return mergeScheduler;
+	}
+
+	//a new segment for a crawl to add pages to, which searches do not see until it is published
+	//the segment of a crawl that stopped before it was published is handed out again, with the pages it committed
+	public synchronized DataManager newSegment() throws IOException {
+		String name = getCrawlSegment();
+		if (name == null || pending.contains(name)) {
+			name = manifest.newSegmentName();
+			Files.write(new File(dir, CRAWL_FILE).toPath(), name.getBytes(StandardCharsets.UTF_8));
+		}
+		pending.add(name);
+		return new DataManager(new File(dir, name).getPath(), false);
+	}
+
+	//a new empty segment for a merge
+	private DataManager newMergeSegment() throws IOException {
+		String name = manifest.newSegmentName();
+		pending.add(name);
+		return new DataManager(new File(dir, name).getPath(), false);
+	}
+
+	//the segment named in the crawl file, or null if there is none, its database is gone or it was published
+	//(publish writes the segment list before it deletes the crawl file, so both can name it after a crash)
+	private String getCrawlSegment() throws IOException {
+		File file = new File(dir, CRAWL_FILE);
+		if (!file.exists()) {
+			return null;
+		}
+
+		String name = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+		return new File(dir, name + ".db").exists() && !manifest.getSegments().contains(name) ? name : null;
+	}
+
+	//the history is read from the current snapshot, which a merge may replace at any time
+	public Map<String, String[]> getCacheValidators() throws IOException {
+		IndexSnapshot current = acquire();
+		try {
+			return current.getCacheValidators();
+		} finally {
+			current.release();
+		}
+	}
+
+	public List<String> getLinkedURLs(String url) throws IOException {
+		IndexSnapshot current = acquire();
+		try {
+			return current.getLinkedURLs(url);
+		} finally {
+			current.release();
+		}
+	}
+
+	private synchronized IndexSnapshot acquire() {
+		snapshot.acquire();
+		return snapshot;
+	}
+
+	//finishes the segment and makes it part of the index
+	//the pages crawled into it are deleted from the older segments, and a segment left with no pages is dropped
+	//the statistics of the new segment are calculated with the idfs of the whole index it joins
+	public synchronized void publish(DataManager segment) throws IOException {
+		String name = new File(segment.getName()).getName();
+		if (!pending.contains(name)) {
+			throw new IOException(segment.getName() + " is not a new segment of " + dir);
+		}
+
+		//the older copies of the crawled pages
+		List<String> crawled = segment.getCrawledURLs();
+		final int[][] deletedPages = new int[snapshot.size()][];
+		for (int i = 0; i < snapshot.size(); i++) {
+			IntList replaced = new IntList();
+			for (String url : crawled) {
+				int pageID = snapshot.getSegment(i).lookupDocument(url);
+				if (pageID != DataManager.NOT_FOUND && !SortedIds.contains(snapshot.getDeletedPages(i), pageID)) {
+					replaced.add(pageID);
+				}
+			}
+
+			int[] newDeletes = replaced.toArray();
+			Arrays.sort(newDeletes);
+			deletedPages[i] = SortedIds.union(snapshot.getDeletedPages(i), newDeletes);
+		}
+
+		segment.finish(collectionStatistics(segment, deletedPages, null));
+		boolean crawling = name.equals(getCrawlSegment());
+
+		IndexManifest next = manifest.copy();
+		if (!crawled.isEmpty()) {
+			next.addSegment(name);
+		}
+		for (int i = 0; i < snapshot.size(); i++) {
+			SegmentReader old = snapshot.getSegment(i);
+			if (deletedPages[i].length == snapshot.getDeletedPages(i).length) {
+				continue;
+			}
+
+			if (deletedPages[i].length == old.getDocumentCount()) {
+				next.removeSegment(old.getName());
+			} else {
+				IndexManifest.writeDeletes(new File(dir, next.newDeleteFile(old.getName())), deletedPages[i]);
+			}
+		}
+		next.write(dir);
+
+		//only once the list has the segment, since until then the crawl file is what keeps it from being deleted
+		pending.remove(name);
+		if (crawling) {
+			Files.delete(new File(dir, CRAWL_FILE).toPath());
+		}
+		setManifest(next);
+		mergeScheduler.maybeMerge();
+	}
+
+	//the page counts of the segments in the snapshot with the given deleted pages, leaving out the segments with
+	//the given names, together with the segment that is being finished
+	private CollectionStatistics collectionStatistics(final DataManager segment, final int[][] deletedPages,
+			final List<String> leftOut) {
+		return new CollectionStatistics() {
+			public int getDocumentCount() throws IOException {
+				int docCount = segment.getDocumentCount();
+				for (int i = 0; i < snapshot.size(); i++) {
+					if (leftOut == null || !leftOut.contains(snapshot.getSegment(i).getName())) {
+						docCount += snapshot.getSegment(i).getDocumentCount() - deletedPages[i].length;
+					}
+				}
+				return docCount;
+			}
+
+			public int getDocumentFrequency(String word) throws IOException {
+				int docFreq = segment.getDocumentFrequency(word);
+				for (int i = 0; i < snapshot.size(); i++) {
+					if (leftOut == null || !leftOut.contains(snapshot.getSegment(i).getName())) {
+						docFreq += snapshot.getSegment(i).getDocumentFrequency(word, deletedPages[i]);
+					}
+				}
+				return docFreq;
+			}
+		};
+	}
+
+	//switches to a segment list that has just been written
+	private void setManifest(IndexManifest next) throws IOException {
+		manifest = next;
+
+		IndexSnapshot old = snapshot;
+		snapshot = IndexSnapshot.open(dir, manifest, old);
+		old.release();
+
+		deleteUnusedFiles();
+	}
+
+	//merges the segments into a new segment and replaces them with it, see MergeScheduler
+	void merge(List<String> segments, RateLimiter limiter) throws IOException {
+		SegmentMerger merger = startMerge(segments, limiter);
+		boolean committed = false;
+		try {
+			//the merged segments are closed before the commit deletes their files
+			try {
+				merger.merge();
+			} finally {
+				merger.close();
+			}
+			commitMerge(merger);
+			committed = true;
+		} finally {
+			if (!committed) {
+				abortMerge(merger);
+			}
+		}
+	}
+
+	//merges all the segments into one without deleted pages, once the merges that are running are done
+	//nothing should be published meanwhile, or the index may be left with more than one segment
+	public void forceMerge() throws IOException {
+		try {
+			mergeScheduler.waitForMerges();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a merge");
+		}
+
+		List<String> segments;
+		synchronized (this) {
+			if (snapshot.size() == 0 || (snapshot.size() == 1 && snapshot.getDeletedPages(0).length == 0)) {
+				return;
+			}
+			segments = new Vector<String>(manifest.getSegments());
+		}
+		merge(segments, new RateLimiter(mergeScheduler.getMaxMBPerSec()));
+	}
+
+	//merges the index into one segment and writes it to the flat file in the index directory
+	//the file is for the next generation of the segment list, which has the same segment and is written right after it,
+	//so searches move to the flat file together with that list, and back to the segments with the one after it
+	public void exportFlatIndex() throws IOException {
+		forceMerge();
+
+		synchronized (this) {
+			if (snapshot.size() == 0) {
+				throw new IOException("the index in " + dir + " is empty");
+			}
+
+			DataManager segment = new DataManager(new File(dir, snapshot.getSegment(0).getName()).getPath(), true);
+			try {
+				FlatIndexWriter.write(segment, manifest.getGeneration() + 1, new File(dir, FlatIndex.FILE_NAME));
+			} finally {
+				segment.close();
+			}
+
+			IndexManifest next = manifest.copy();
+			next.write(dir);
+			setManifest(next);
+		}
+	}
+
+	//the segments the policy wants merged next, called by the merge thread
+	synchronized List<String> findMerge(TieredMergePolicy policy) throws IOException {
+		return policy.findMerge(snapshot, dir);
+	}
+
+	//sets up the merge of the segments into a new segment, which the merge thread then copies them into
+	synchronized SegmentMerger startMerge(List<String> segments, RateLimiter limiter) throws IOException {
+		int[][] deletedPages = new int[segments.size()][];
+		for (int i = 0; i < segments.size(); i++) {
+			deletedPages[i] = getDeletedPages(segments.get(i));
+			if (deletedPages[i] == null) {
+				throw new IOException("segment " + segments.get(i) + " is not in the index");
+			}
+		}
+
+		DataManager target = newMergeSegment();
+		try {
+			return new SegmentMerger(dir, segments, deletedPages, target, limiter);
+		} catch (IOException e) {
+			abortMerge(target);
+			throw e;
+		}
+	}
+
+	//replaces the merged segments with the new segment in the segment list
+	//pages deleted from the merged segments while they were being copied are removed from the new segment first,
+	//and its statistics are calculated with the idfs of the index it joins
+	synchronized void commitMerge(SegmentMerger merger) throws IOException {
+		DataManager target = merger.getTarget();
+		List<String> segments = merger.getSegments();
+		for (int i = 0; i < segments.size(); i++) {
+			int[] deletedPages = getDeletedPages(segments.get(i));
+			if (deletedPages == null || deletedPages.length != merger.getDeletedPages(i).length) {
+				for (int pageID : merger.getNewDeletes(i, deletedPages)) {
+					target.removeDocument(pageID);
+				}
+			}
+		}
+
+		int[][] deletedPages = new int[snapshot.size()][];
+		for (int i = 0; i < snapshot.size(); i++) {
+			deletedPages[i] = snapshot.getDeletedPages(i);
+		}
+		String name = new File(target.getName()).getName();
+		boolean empty = target.getDocuments().length == 0;
+		target.finish(collectionStatistics(target, deletedPages, segments));
+		pending.remove(name);
+
+		IndexManifest next = manifest.copy();
+		next.replaceSegments(segments, empty ? null : name);
+		next.write(dir);
+		setManifest(next);
+	}
+
+	//drops the new segment of a merge that failed
+	synchronized void abortMerge(SegmentMerger merger) {
+		abortMerge(merger.getTarget());
+	}
+
+	private void abortMerge(DataManager target) {
+		String name = new File(target.getName()).getName();
+		if (pending.remove(name)) {
+			try {
+				target.close();
+			} catch (IOException e) {
+				System.out.println("7 " + e);
+			}
+			deleteUnusedFiles();
+		}
+	}
+
+	//the deleted pages of the segment in the current snapshot, or null if it is not in the index
+	private int[] getDeletedPages(String segment) {
+		for (int i = 0; i < snapshot.size(); i++) {
+			if (snapshot.getSegment(i).getName().equals(segment)) {
+				return snapshot.getDeletedPages(i);
+			}
+		}
+
+		return null;
+	}
+
+	//deletes the segment files that are neither in the segment list nor handed out by newSegment(),
+	//except those of a crawl that can still go on
+	private void deleteUnusedFiles() {
+		Set<String> used = manifest.getFiles();
+		Set<String> keep = new HashSet<String>(pending);
+		try {
+			String crawling = getCrawlSegment();
+			if (crawling != null) {
+				keep.add(crawling);
+			}
+		} catch (IOException e) {
+			//the crawl file cannot be read, so its segment cannot be found to go on with either
+		}
+		for (String name : keep) {
+			used.add(name + ".db");
+			used.add(name + ".lg");
+		}
+
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (IndexManifest.isSegmentFile(file.getName()) && !used.contains(file.getName())) {
+				file.delete();
+			}
+		}
+	}
+
+	//waits for the merge that is running, closes the published segments and lets another indexer open the index
+	//segments that were not published are deleted the next time the index is opened
+	public void close() throws IOException {
+		try {
+			mergeScheduler.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a merge");
+		}
+
+		try {
+			synchronized (this) {
+				snapshot.release();
+			}
+		} finally {
+			lock.release();
+			lockChannel.close();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * A growable list of primitive ints, so collecting numbers does not box every one of them.
+ */
+
+package searchEngine;
+
+import java.util.Arrays;
+
+public class IntList {
+
+	private int[] values;
+	private int size;
+
+	public IntList() {
+		this(8);
+	}
+
+	public IntList(int capacity) {
+		values = new int[Math.max(capacity, 1)];
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int i) {
+		return values[i];
+	}
+
+	//a linear search, for short lists
+	public boolean contains(int value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	public void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	//a copy of the values, trimmed to the size of the list
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
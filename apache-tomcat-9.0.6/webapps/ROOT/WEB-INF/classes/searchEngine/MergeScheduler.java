@@ -0,0 +1,117 @@
+/*
+ * Merges the segments of the index in a background thread while the indexer goes on crawling and publishing.
+ * The writer wakes the thread when it opens the index and after every publish (maybeMerge). The thread then asks
+ * the merge policy for a merge, runs it, and asks again until the policy finds nothing more to merge.
+ * One merge runs at a time, and it writes at most maxMBPerSec megabytes per second (see RateLimiter).
+ */
+
+package searchEngine;
+
+import java.util.List;
+
+public class MergeScheduler implements Runnable {
+
+	private IndexWriter writer;
+	private TieredMergePolicy policy = new TieredMergePolicy();
+	private double maxMBPerSec = 0;
+
+	private Thread thread;
+	private boolean requested = false;
+	private boolean merging = false;
+	private boolean closed = false;
+
+	MergeScheduler(IndexWriter writer) {
+		this.writer = writer;
+	}
+
+	public synchronized TieredMergePolicy getMergePolicy() {
+		return policy;
+	}
+
+	public synchronized void setMergePolicy(TieredMergePolicy policy) {
+		this.policy = policy;
+	}
+
+	public synchronized double getMaxMBPerSec() {
+		return maxMBPerSec;
+	}
+
+	//0 for no limit, takes effect from the next merge
+	public synchronized void setMaxMBPerSec(double maxMBPerSec) {
+		this.maxMBPerSec = maxMBPerSec;
+	}
+
+	//asks the merge thread to look for merges, starting it the first time
+	synchronized void maybeMerge() {
+		if (closed) {
+			return;
+		}
+
+		requested = true;
+		if (thread == null) {
+			thread = new Thread(this, "segment-merger");
+			//merges left unfinished when the program exits are cleaned up the next time the index is opened
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+	}
+
+	//waits until the policy finds nothing more to merge
+	public synchronized void waitForMerges() throws InterruptedException {
+		while ((requested || merging) && !closed) {
+			wait();
+		}
+	}
+
+	//lets the merge that is running finish and starts no more
+	synchronized void close() throws InterruptedException {
+		closed = true;
+		notifyAll();
+		while (merging) {
+			wait();
+		}
+	}
+
+	public void run() {
+		while (true) {
+			TieredMergePolicy currentPolicy;
+			double currentMBPerSec;
+			synchronized (this) {
+				while (!requested && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (closed) {
+					return;
+				}
+				requested = false;
+				merging = true;
+				currentPolicy = policy;
+				currentMBPerSec = maxMBPerSec;
+			}
+
+			try {
+				List<String> segments;
+				while (!isClosed() && (segments = writer.findMerge(currentPolicy)) != null) {
+					writer.merge(segments, new RateLimiter(currentMBPerSec));
+				}
+			} catch (Exception e) {
+				//the same merge would fail again, so it is only tried again after the next publish
+				System.out.println("6 " + e);
+			} finally {
+				synchronized (this) {
+					merging = false;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	private synchronized boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,17 @@
+/*
+ * The per page numbers that turn the inner product of a page with a query into their cosine similarity,
+ * calculated when the index is finalized. A DataManager reads them from its tables, a FlatIndex from its page table.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+
+public interface PageNorms {
+
+	//the length of the page vector, 0 for a page that has no keywords
+	public double getNorm(int pageID) throws IOException;
+
+	//the frequency of the most frequent keyword of the page
+	public int getMaxTF(int pageID) throws IOException;
+}
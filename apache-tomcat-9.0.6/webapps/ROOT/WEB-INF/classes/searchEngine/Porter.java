@@ -3,400 +3,377 @@
    address:  Psilovraxou 12, Agrinio, 30100
 
    comments: Compile it, import the Porter class into you program and create an instance.
-	     Then use the stripAffixes method of this method which takes a String as 
+	     Then use the stripAffixes method of this method which takes a String as
              input and returns the stem of this String again as a String.
 
-*/ 
+   The steps now work in place on a char buffer that is kept between calls, instead of building
+   a new String for every suffix they test, and the stems of recently seen words are cached.
+   The stems are the same as before. A Porter is not thread safe, but the cache is shared by all of them.
+
+*/
 
 package searchEngine;
 
-import java.io.*;
+public class Porter {
+
+  //the cache is direct-mapped: a word goes in the slot given by its hash, replacing the word that was there
+  private static final int CACHE_SIZE = 1 << 13;
+  private static final CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
 
-class NewString {
-  public String str;
+  //the entries are immutable, so the threads can read and replace them without locking
+  private static final class CacheEntry {
+     final String word;
+     final String stem;
 
-  NewString() {
-     str = "";
+     CacheEntry( String word, String stem ) {
+        this.word = word;
+        this.stem = stem;
+     }
   }
-}
 
-public class Porter {
+  private static final String[][] step2Suffixes = { { "ational", "ate" },
+                                                    { "tional",  "tion" },
+                                                    { "enci",    "ence" },
+                                                    { "anci",    "ance" },
+                                                    { "izer",    "ize" },
+                                                    { "iser",    "ize" },
+                                                    { "abli",    "able" },
+                                                    { "alli",    "al" },
+                                                    { "entli",   "ent" },
+                                                    { "eli",     "e" },
+                                                    { "ousli",   "ous" },
+                                                    { "ization", "ize" },
+                                                    { "isation", "ize" },
+                                                    { "ation",   "ate" },
+                                                    { "ator",    "ate" },
+                                                    { "alism",   "al" },
+                                                    { "iveness", "ive" },
+                                                    { "fulness", "ful" },
+                                                    { "ousness", "ous" },
+                                                    { "aliti",   "al" },
+                                                    { "iviti",   "ive" },
+                                                    { "biliti",  "ble" }};
+
+  private static final String[][] step3Suffixes = { { "icate", "ic" },
+                                                    { "ative", "" },
+                                                    { "alize", "al" },
+                                                    { "alise", "al" },
+                                                    { "iciti", "ic" },
+                                                    { "ical",  "ic" },
+                                                    { "ful",   "" },
+                                                    { "ness",  "" }};
+
+  private static final String[] step4Suffixes = { "al", "ance", "ence", "er", "ic", "able", "ible", "ant", "ement", "ment", "ent",
+                                                  "sion", "tion", "ou", "ism", "ate", "iti", "ous", "ive", "ize", "ise"};
+
+  private static final String[] prefixes = { "kilo", "micro", "milli", "intra", "ultra", "mega", "nano", "pico", "pseudo"};
+
+  //the word being stemmed is b[0..k), the steps never make it longer than the cleaned word
+  private char[] b = new char[32];
+  private int k;
+  //where the suffix found by the last successful hasSuffix starts, so b[0..j) is its stem
+  private int j;
+
+  //puts the lower case letters and digits of str into the buffer
+  private void clean( String str ) {
+     if ( b.length < str.length() )
+        b = new char[Math.max(str.length(), b.length * 2)];
+
+     k = 0;
+     for ( int i=0; i < str.length(); i++ ) {
+         char ch = str.charAt(i);
+         if ( ch >= 128 ) {
+            cleanUnicode( str );
+            return;
+         }
+         if ( ch >= 'A' && ch <= 'Z' )
+            b[k++] = (char) (ch + ('a' - 'A'));
+         else if ( (ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9') )
+            b[k++] = ch;
+     }
+  } //clean
 
-  private String Clean( String str ) {
-     int last = str.length();
-     
-     Character ch = new Character( str.charAt(0) );
-     String temp = "";
+  //the same for a word that is not all ascii, where lower case can change the length
+  private void cleanUnicode( String str ) {
+     String lower = str.toLowerCase();
+     if ( b.length < lower.length() )
+        b = new char[lower.length()];
 
-     for ( int i=0; i < last; i++ ) {
-         if ( ch.isLetterOrDigit( str.charAt(i) ) )
-            temp += str.charAt(i);
+     k = 0;
+     for ( int i=0; i < lower.length(); i++ ) {
+         if ( Character.isLetterOrDigit( lower.charAt(i) ) )
+            b[k++] = lower.charAt(i);
      }
-   
-     return temp;
-  } //clean
- 
-  private boolean hasSuffix( String word, String suffix, NewString stem ) {
+  }
 
-     String tmp = "";
+  //true if the word is longer than the suffix and ends with it, sets j to where the suffix starts
+  private boolean hasSuffix( String suffix ) {
+     int length = suffix.length();
 
-     if ( word.length() <= suffix.length() )
+     if ( k <= length )
         return false;
-     if (suffix.length() > 1) 
-        if ( word.charAt( word.length()-2 ) != suffix.charAt( suffix.length()-2 ) )
-           return false;
-  
-     stem.str = "";
+     for ( int i=0; i<length; i++ )
+         if ( b[k-length+i] != suffix.charAt(i) )
+            return false;
 
-     for ( int i=0; i<word.length()-suffix.length(); i++ )
-         stem.str += word.charAt( i );
-     tmp = stem.str;
+     j = k - length;
+     return true;
+  }
 
+  //replaces the suffix found by the last hasSuffix with the given one
+  private void setSuffix( String suffix ) {
      for ( int i=0; i<suffix.length(); i++ )
-         tmp += suffix.charAt( i );
-
-     if ( tmp.compareTo( word ) == 0 )
-        return true;
-     else
-        return false;
+         b[j+i] = suffix.charAt(i);
+     k = j + suffix.length();
   }
 
   private boolean vowel( char ch, char prev ) {
      switch ( ch ) {
-        case 'a': case 'e': case 'i': case 'o': case 'u': 
+        case 'a': case 'e': case 'i': case 'o': case 'u':
           return true;
         case 'y': {
 
           switch ( prev ) {
-            case 'a': case 'e': case 'i': case 'o': case 'u': 
+            case 'a': case 'e': case 'i': case 'o': case 'u':
               return false;
 
-            default: 
+            default:
               return true;
           }
         }
-        
-        default : 
+
+        default :
           return false;
      }
   }
 
-  private int measure( String stem ) {
-    
+  //the measure of b[0..length)
+  private int measure( int length ) {
+
     int i=0, count = 0;
-    int length = stem.length();
 
     while ( i < length ) {
        for ( ; i < length ; i++ ) {
            if ( i > 0 ) {
-              if ( vowel(stem.charAt(i),stem.charAt(i-1)) )
+              if ( vowel(b[i],b[i-1]) )
                  break;
            }
-           else {  
-              if ( vowel(stem.charAt(i),'a') )
-                break; 
+           else {
+              if ( vowel(b[i],'a') )
+                break;
            }
        }
 
        for ( i++ ; i < length ; i++ ) {
-           if ( i > 0 ) {
-              if ( !vowel(stem.charAt(i),stem.charAt(i-1)) )
-                  break;
-              }
-           else {  
-              if ( !vowel(stem.charAt(i),'?') )
-                 break;
-           }
-       } 
+           if ( !vowel(b[i],b[i-1]) )
+              break;
+       }
       if ( i < length ) {
          count++;
          i++;
       }
     } //while
-    
+
     return(count);
   }
 
-  private boolean containsVowel( String word ) {
+  private boolean containsVowel( int length ) {
 
-     for (int i=0 ; i < word.length(); i++ )
+     for (int i=0 ; i < length; i++ )
          if ( i > 0 ) {
-            if ( vowel(word.charAt(i),word.charAt(i-1)) )
+            if ( vowel(b[i],b[i-1]) )
                return true;
          }
-         else {  
-            if ( vowel(word.charAt(0),'a') )
+         else {
+            if ( vowel(b[0],'a') )
                return true;
          }
-        
+
      return false;
   }
 
-  private boolean cvc( String str ) {
-     int length=str.length();
+  //whether b[0..length) ends consonant-vowel-consonant, the last not being w, x or y
+  private boolean cvc( int length ) {
 
      if ( length < 3 )
         return false;
-    
-     if ( (!vowel(str.charAt(length-1),str.charAt(length-2)) )
-        && (str.charAt(length-1) != 'w') && (str.charAt(length-1) != 'x') && (str.charAt(length-1) != 'y')
-        && (vowel(str.charAt(length-2),str.charAt(length-3))) ) {
 
-        if (length == 3) {
-           if (!vowel(str.charAt(0),'?')) 
-              return true;
-           else
-              return false;
-        }
-        else {
-           if (!vowel(str.charAt(length-3),str.charAt(length-4)) ) 
-              return true; 
-           else
-              return false;
-        } 
-     }   
-  
+     if ( (!vowel(b[length-1],b[length-2]) )
+        && (b[length-1] != 'w') && (b[length-1] != 'x') && (b[length-1] != 'y')
+        && (vowel(b[length-2],b[length-3])) ) {
+
+        if (length == 3)
+           return !vowel(b[0],'?');
+        else
+           return !vowel(b[length-3],b[length-4]);
+     }
+
      return false;
   }
 
-  private String step1( String str ) {
- 
-     NewString stem = new NewString();
+  private void step1() {
 
-     if ( str.charAt( str.length()-1 ) == 's' ) {
-        if ( (hasSuffix( str, "sses", stem )) || (hasSuffix( str, "ies", stem)) ){
-           String tmp = "";
-           for (int i=0; i<str.length()-2; i++)
-               tmp += str.charAt(i);
-           str = tmp;
+     if ( b[k-1] == 's' ) {
+        if ( hasSuffix( "sses" ) || hasSuffix( "ies" ) ) {
+           k -= 2;
         }
         else {
-           if ( ( str.length() == 1 ) && ( str.charAt(str.length()-1) == 's' ) ) {
-              str = "";
-              return str;
+           if ( k == 1 ) {
+              k = 0;
+              return;
            }
-           if ( str.charAt( str.length()-2 ) != 's' ) {
-              String tmp = "";
-              for (int i=0; i<str.length()-1; i++)
-                  tmp += str.charAt(i);
-              str = tmp;
-           }
-        }  
+           if ( b[k-2] != 's' )
+              k--;
+        }
      }
 
-     if ( hasSuffix( str,"eed",stem ) ) {
-           if ( measure( stem.str ) > 0 ) {
-              String tmp = "";
-              for (int i=0; i<str.length()-1; i++)
-                  tmp += str.charAt( i );
-              str = tmp;
-           }
+     if ( hasSuffix( "eed" ) ) {
+        if ( measure( j ) > 0 )
+           k--;
      }
-     else {  
-        if (  (hasSuffix( str,"ed",stem )) || (hasSuffix( str,"ing",stem )) ) { 
-           if (containsVowel( stem.str ))  {
-
-              String tmp = "";
-              for ( int i = 0; i < stem.str.length(); i++)
-                  tmp += str.charAt( i );
-              str = tmp;
-              if ( str.length() == 1 )
-                 return str;
-
-              if ( ( hasSuffix( str,"at",stem) ) || ( hasSuffix( str,"bl",stem ) ) || ( hasSuffix( str,"iz",stem) ) ) {
-                 str += "e";
-           
-              }
-              else {   
-                 int length = str.length(); 
-                 if ( (str.charAt(length-1) == str.charAt(length-2)) 
-                    && (str.charAt(length-1) != 'l') && (str.charAt(length-1) != 's') && (str.charAt(length-1) != 'z') ) {
-                     
-                    tmp = "";
-                    for (int i=0; i<str.length()-1; i++)
-                        tmp += str.charAt(i);
-                    str = tmp;
-                 }
-                 else
-                    if ( measure( str ) == 1 ) {
-                       if ( cvc(str) ) 
-                          str += "e";
-                    }
-              }
-           }
+     else if ( ( hasSuffix( "ed" ) || hasSuffix( "ing" ) ) && containsVowel( j ) ) {
+        k = j;
+        if ( k == 1 )
+           return;
+
+        if ( hasSuffix( "at" ) || hasSuffix( "bl" ) || hasSuffix( "iz" ) ) {
+           b[k++] = 'e';
+        }
+        else if ( (b[k-1] == b[k-2]) && (b[k-1] != 'l') && (b[k-1] != 's') && (b[k-1] != 'z') ) {
+           k--;
+        }
+        else if ( measure( k ) == 1 && cvc( k ) ) {
+           b[k++] = 'e';
         }
      }
 
-     if ( hasSuffix(str,"y",stem) ) 
-        if ( containsVowel( stem.str ) ) {
-           String tmp = "";
-           for (int i=0; i<str.length()-1; i++ )
-               tmp += str.charAt(i);
-           str = tmp + "i";
-        }
-     return str;  
+     if ( hasSuffix( "y" ) && containsVowel( j ) )
+        b[k-1] = 'i';
   }
 
-  private String step2( String str ) {
-
-     String[][] suffixes = { { "ational", "ate" },
-                                    { "tional",  "tion" },
-                                    { "enci",    "ence" },
-                                    { "anci",    "ance" },
-                                    { "izer",    "ize" },
-                                    { "iser",    "ize" },
-                                    { "abli",    "able" },
-                                    { "alli",    "al" },
-                                    { "entli",   "ent" },
-                                    { "eli",     "e" },
-                                    { "ousli",   "ous" },
-                                    { "ization", "ize" },
-                                    { "isation", "ize" },
-                                    { "ation",   "ate" },
-                                    { "ator",    "ate" },
-                                    { "alism",   "al" },
-                                    { "iveness", "ive" },
-                                    { "fulness", "ful" },
-                                    { "ousness", "ous" },
-                                    { "aliti",   "al" },
-                                    { "iviti",   "ive" },
-                                    { "biliti",  "ble" }};
-     NewString stem = new NewString();
-
-     
-     for ( int index = 0 ; index < suffixes.length; index++ ) {
-         if ( hasSuffix ( str, suffixes[index][0], stem ) ) {
-            if ( measure ( stem.str ) > 0 ) {
-               str = stem.str + suffixes[index][1];
-               return str;
-            }
+  private void step2() {
+     for ( int index = 0 ; index < step2Suffixes.length; index++ ) {
+         if ( hasSuffix( step2Suffixes[index][0] ) && measure( j ) > 0 ) {
+            setSuffix( step2Suffixes[index][1] );
+            return;
          }
      }
-
-     return str;
   }
 
-  private String step3( String str ) {
-
-        String[][] suffixes = { { "icate", "ic" },
-                                       { "ative", "" },
-                                       { "alize", "al" },
-                                       { "alise", "al" },
-                                       { "iciti", "ic" },
-                                       { "ical",  "ic" },
-                                       { "ful",   "" },
-                                       { "ness",  "" }};
-        NewString stem = new NewString();
-
-        for ( int index = 0 ; index<suffixes.length; index++ ) {
-            if ( hasSuffix ( str, suffixes[index][0], stem ))
-               if ( measure ( stem.str ) > 0 ) {
-                  str = stem.str + suffixes[index][1];
-                  return str;
-               }
-        }
-        return str;
+  private void step3() {
+     for ( int index = 0 ; index < step3Suffixes.length; index++ ) {
+         if ( hasSuffix( step3Suffixes[index][0] ) && measure( j ) > 0 ) {
+            setSuffix( step3Suffixes[index][1] );
+            return;
+         }
+     }
   }
 
-  private String step4( String str ) {
-        
-     String[] suffixes = { "al", "ance", "ence", "er", "ic", "able", "ible", "ant", "ement", "ment", "ent", "sion", "tion",
-                           "ou", "ism", "ate", "iti", "ous", "ive", "ize", "ise"};
-     
-     NewString stem = new NewString();
-        
-     for ( int index = 0 ; index<suffixes.length; index++ ) {
-         if ( hasSuffix ( str, suffixes[index], stem ) ) {
-           
-            if ( measure ( stem.str ) > 1 ) {
-               str = stem.str;
-               return str;
-            }
+  private void step4() {
+     for ( int index = 0 ; index < step4Suffixes.length; index++ ) {
+         if ( hasSuffix( step4Suffixes[index] ) && measure( j ) > 1 ) {
+            k = j;
+            return;
          }
      }
-     return str;
   }
 
-  private String step5( String str ) {
-
-     if ( str.charAt(str.length()-1) == 'e' ) { 
-        if ( measure(str) > 1 ) {/* measure(str)==measure(stem) if ends in vowel */
-           String tmp = "";
-           for ( int i=0; i<str.length()-1; i++ ) 
-               tmp += str.charAt( i );
-           str = tmp;
-        }
-        else
-           if ( measure(str) == 1 ) {
-              String stem = "";
-              for ( int i=0; i<str.length()-1; i++ ) 
-                  stem += str.charAt( i );
+  private void step5() {
 
-              if ( !cvc(stem) )
-                 str = stem;
-           }
+     if ( b[k-1] == 'e' ) {
+        int m = measure( k );/* measure(str)==measure(stem) if ends in vowel */
+        if ( m > 1 || ( m == 1 && !cvc( k-1 ) ) )
+           k--;
      }
-     
-     if ( str.length() == 1 )
-        return str;
-     if ( (str.charAt(str.length()-1) == 'l') && (str.charAt(str.length()-2) == 'l') && (measure(str) > 1) )
-        if ( measure(str) > 1 ) {/* measure(str)==measure(stem) if ends in vowel */
-           String tmp = "";
-           for ( int i=0; i<str.length()-1; i++ ) 
-               tmp += str.charAt( i );
-           str = tmp;
-        } 
-     return str;
-  }
 
-  private String stripPrefixes ( String str) {
+     if ( k == 1 )
+        return;
+     if ( (b[k-1] == 'l') && (b[k-2] == 'l') && (measure( k ) > 1) )
+        k--;
+  }
 
-     String[] prefixes = { "kilo", "micro", "milli", "intra", "ultra", "mega", "nano", "pico", "pseudo"};
+  private void stripPrefixes() {
 
-     int last = prefixes.length;
-     for ( int i=0 ; i<last; i++ ) {
-         if ( str.startsWith( prefixes[i] ) ) {
-            String temp = "";
-            for ( int j=0 ; j< str.length()-prefixes[i].length(); j++ )
-                temp += str.charAt( j+prefixes[i].length() );
-            return temp;
+     for ( int i=0 ; i<prefixes.length; i++ ) {
+         String prefix = prefixes[i];
+         if ( k >= prefix.length() && startsWith( prefix ) ) {
+            System.arraycopy( b, prefix.length(), b, 0, k - prefix.length() );
+            k -= prefix.length();
+            return;
          }
      }
-     
-     return str;
   }
 
+  private boolean startsWith( String prefix ) {
+     for ( int i=0; i<prefix.length(); i++ )
+         if ( b[i] != prefix.charAt(i) )
+            return false;
+     return true;
+  }
 
-  private String stripSuffixes( String str ) {
-
-     str = step1( str );
-     if ( str.length() >= 1 )
-        str = step2( str );
-     if ( str.length() >= 1 )
-        str = step3( str );
-     if ( str.length() >= 1 )
-        str = step4( str );
-     if ( str.length() >= 1 )
-        str = step5( str );
- 
-     return str; 
+  private void stripSuffixes() {
+
+     step1();
+     if ( k >= 1 )
+        step2();
+     if ( k >= 1 )
+        step3();
+     if ( k >= 1 )
+        step4();
+     if ( k >= 1 )
+        step5();
   }
 
 
   public String stripAffixes( String str ) {
 
-    str = str.toLowerCase();
-    str = Clean(str);
-  
-    if (( str != "" ) && (str.length() > 2)) {
-       str = stripPrefixes(str);
+    int slot = cacheSlot( str.hashCode() );
+    CacheEntry entry = cache[slot];
+    if ( entry != null && entry.word.equals( str ) )
+       return entry.stem;
+
+    return stem( str, slot );
+    } //stripAffixes
+
+  //the same for the word in word[0..length), e.g. from a Tokenizer, which is only made into a String if its stem is not cached
+  public String stripAffixes( char[] word, int length ) {
+
+    //the hash String.hashCode() gives, so the word has the same slot as a String
+    int hash = 0;
+    for ( int i=0; i<length; i++ )
+        hash = 31 * hash + word[i];
+
+    int slot = cacheSlot( hash );
+    CacheEntry entry = cache[slot];
+    if ( entry != null && entry.word.length() == length ) {
+       int i = 0;
+       while ( i < length && entry.word.charAt(i) == word[i] )
+          i++;
+       if ( i == length )
+          return entry.stem;
+    }
+
+    return stem( new String( word, 0, length ), slot );
+  }
 
-       if (str != "" ) 
-          str = stripSuffixes(str);
+  private int cacheSlot( int hash ) {
+     return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+  }
 
-    }   
+  //stems the word and puts it in the given slot of the cache
+  private String stem( String str, int slot ) {
 
-    return str;
-    } //stripAffixes
+    clean( str );
+    if ( k > 2 ) {
+       stripPrefixes();
+
+       if ( k > 0 )
+          stripSuffixes();
+    }
+
+    String stem = new String( b, 0, k );
+    cache[slot] = new CacheEntry( str, stem );
+    return stem;
+  }
 
 } //class
@@ -0,0 +1,398 @@
+/*
+ * A list of id:frequency postings kept sorted by id.
+ * The posting lists of the body and title indexes also keep the position of every occurrence of the word
+ * (the number of keywords before it in the body or title), which is what phrase search needs.
+ * A posting with positions has one position for each occurrence, so its frequency is the number of positions.
+ *
+ * In the database a posting list is stored as a byte array:
+ * 	count * 2, plus 1 if the list has positions,
+ * 	then for every posting the gap from the previous id and the frequency,
+ * 	followed, if the list has positions, by the gaps between the positions of the posting (the first one from 0),
+ * 	all written as variable length integers (7 bits per byte, high bit set on all but the last byte).
+ * This replaces the old "id:freq;id:freq" strings, which had to be split and rebuilt on every update.
+ */
+
+package searchEngine;
+
+import java.util.Arrays;
+
+public class PostingList {
+
+	private int[] ids;
+	private int[] freqs;
+	private int size;
+
+	//the positions of all the postings one after the other, null if the list has no positions
+	//posStarts[i] = where the positions of the posting at i start
+	private int[] positions;
+	private int[] posStarts;
+	private int posSize;
+
+	public PostingList() {
+		this(4);
+	}
+
+	public PostingList(int capacity) {
+		this(capacity, false);
+	}
+
+	public PostingList(int capacity, boolean positional) {
+		ids = new int[Math.max(capacity, 1)];
+		freqs = new int[Math.max(capacity, 1)];
+		size = 0;
+
+		if (positional) {
+			positions = new int[Math.max(capacity, 1) * 2];
+			posStarts = new int[Math.max(capacity, 1)];
+			posSize = 0;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int id(int i) {
+		return ids[i];
+	}
+
+	public int freq(int i) {
+		return freqs[i];
+	}
+
+	public boolean isPositional() {
+		return positions != null;
+	}
+
+	//the j-th position of the posting at i, for j < freq(i), in increasing order
+	public int position(int i, int j) {
+		return positions[posStarts[i] + j];
+	}
+
+	//copies of the ids and frequencies, trimmed to the size of the list
+	public int[] ids() {
+		return Arrays.copyOf(ids, size);
+	}
+
+	public int[] freqs() {
+		return Arrays.copyOf(freqs, size);
+	}
+
+	//returns the position of the id in the list, or a negative number if it is not there
+	public int indexOf(int id) {
+		return Arrays.binarySearch(ids, 0, size, id);
+	}
+
+	public boolean contains(int id) {
+		return indexOf(id) >= 0;
+	}
+
+	//returns the first index from "from" on whose id is at least the given id, or size() if there is none
+	public int seek(int id, int from) {
+		return SortedIds.seek(ids, size, from, id);
+	}
+
+	//adds freq to the posting of the given id, inserting it in sorted position if it is new
+	//a list with positions needs the positions of the new occurrences, see add(int, IntList)
+	public void add(int id, int freq) {
+		if (positions != null) {
+			throw new IllegalStateException("the occurrences of a posting list with positions are added with their positions");
+		}
+
+		int index = postingIndex(id);
+		freqs[index] += freq;
+	}
+
+	//adds the occurrences at the given positions (in increasing order) to the posting of the given id
+	//a list without positions only counts them
+	public void add(int id, IntList newPositions) {
+		int index = postingIndex(id);
+
+		if (positions != null) {
+			addPositions(index, newPositions.toArray(), newPositions.size());
+			//keeps the positions of a posting sorted if some were there already
+			if (freqs[index] > 0) {
+				Arrays.sort(positions, posStarts[index], posStarts[index] + freqs[index] + newPositions.size());
+			}
+		}
+		freqs[index] += newPositions.size();
+	}
+
+	//removes the posting of the given id, returns false if there was none
+	public boolean remove(int id) {
+		int index = indexOf(id);
+		if (index < 0) {
+			return false;
+		}
+
+		if (positions != null) {
+			int start = posStarts[index];
+			int count = freqs[index];
+			System.arraycopy(positions, start + count, positions, start, posSize - start - count);
+			posSize -= count;
+			for (int i = index + 1; i < size; i++) {
+				posStarts[i - 1] = posStarts[i] - count;
+			}
+		}
+
+		System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+		System.arraycopy(freqs, index + 1, freqs, index, size - index - 1);
+		size--;
+		return true;
+	}
+
+	//the index of the posting of the given id, inserting an empty posting if there is none
+	private int postingIndex(int id) {
+		//ids are normally handed out in increasing order, so check the end of the list first
+		int index;
+		if (size == 0 || ids[size - 1] < id) {
+			index = size;
+		} else {
+			index = indexOf(id);
+			if (index >= 0) {
+				return index;
+			}
+			index = -(index + 1);
+		}
+
+		ensureCapacity(size + 1);
+		System.arraycopy(ids, index, ids, index + 1, size - index);
+		System.arraycopy(freqs, index, freqs, index + 1, size - index);
+		ids[index] = id;
+		freqs[index] = 0;
+
+		if (positions != null) {
+			System.arraycopy(posStarts, index, posStarts, index + 1, size - index);
+			posStarts[index] = index < size ? posStarts[index + 1] : posSize;
+		}
+		size++;
+
+		return index;
+	}
+
+	//inserts count positions after the current positions of the posting at index
+	//the caller updates the frequency of the posting
+	private void addPositions(int index, int[] values, int count) {
+		if (posSize + count > positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(posSize + count, positions.length * 2));
+		}
+
+		int at = posStarts[index] + freqs[index];
+		System.arraycopy(positions, at, positions, at + count, posSize - at);
+		System.arraycopy(values, 0, positions, at, count);
+		posSize += count;
+
+		for (int i = index + 1; i < size; i++) {
+			posStarts[i] += count;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > ids.length) {
+			int newLength = Math.max(capacity, ids.length * 2);
+			ids = Arrays.copyOf(ids, newLength);
+			freqs = Arrays.copyOf(freqs, newLength);
+			if (positions != null) {
+				posStarts = Arrays.copyOf(posStarts, newLength);
+			}
+		}
+	}
+
+	//adds the pages where the words of the given lists are next to each other and in order to result,
+	//with the number of times they are on each page; lists[k] is the list of word k of the phrase
+	//lists written before positions were kept have none, so the database has to be rebuilt to find phrases in them
+	public static void addPhraseMatches(PostingList[] lists, PostingList result) {
+		int shortest = 0;
+		for (int k = 0; k < lists.length; k++) {
+			if (lists[k].size() == 0 || !lists[k].isPositional()) {
+				return;
+			}
+			if (lists[k].size() < lists[shortest].size()) {
+				shortest = k;
+			}
+		}
+
+		//walks the shortest list and looks for each of its pages in the others
+		int[] index = new int[lists.length];
+		for (int i = 0; i < lists[shortest].size(); i++) {
+			int pageID = lists[shortest].id(i);
+			boolean onPage = true;
+			for (int k = 0; k < lists.length && onPage; k++) {
+				index[k] = lists[k].seek(pageID, index[k]);
+				onPage = index[k] < lists[k].size() && lists[k].id(index[k]) == pageID;
+			}
+
+			if (onPage) {
+				int count = countPhrase(lists, index);
+				if (count > 0) {
+					result.add(pageID, count);
+				}
+			}
+		}
+	}
+
+	//the number of places where word k of the phrase is k positions after the first word,
+	//given the index of the same page in each of the word's lists
+	private static int countPhrase(PostingList[] lists, int[] index) {
+		int count = 0;
+		int[] next = new int[lists.length];
+
+		for (int j = 0; j < lists[0].freq(index[0]); j++) {
+			int start = lists[0].position(index[0], j);
+			boolean match = true;
+
+			for (int k = 1; k < lists.length && match; k++) {
+				int freq = lists[k].freq(index[k]);
+				while (next[k] < freq && lists[k].position(index[k], next[k]) < start + k) {
+					next[k]++;
+				}
+				match = next[k] < freq && lists[k].position(index[k], next[k]) == start + k;
+			}
+
+			if (match) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	//the list in the old "id:freq;id:freq" form, used when printing the database
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i != 0) {
+				result.append(';');
+			}
+			result.append(ids[i]).append(':').append(freqs[i]);
+		}
+
+		return result.toString();
+	}
+
+	public byte[] toBytes() {
+		byte[] buffer = new byte[5 + size * 10 + posSize * 5];
+		int pos = writeVInt(buffer, 0, (size << 1) | (positions != null ? 1 : 0));
+
+		int prev = 0;
+		for (int i = 0; i < size; i++) {
+			pos = writeVInt(buffer, pos, ids[i] - prev);
+			pos = writeVInt(buffer, pos, freqs[i]);
+			prev = ids[i];
+
+			if (positions != null) {
+				int prevPosition = 0;
+				for (int j = posStarts[i]; j < posStarts[i] + freqs[i]; j++) {
+					pos = writeVInt(buffer, pos, positions[j] - prevPosition);
+					prevPosition = positions[j];
+				}
+			}
+		}
+
+		return Arrays.copyOf(buffer, pos);
+	}
+
+	public static PostingList fromBytes(byte[] data) {
+		return fromBytes(data, true);
+	}
+
+	//keepPositions = false skips over the positions, for reading only ids and frequencies
+	public static PostingList fromBytes(byte[] data, boolean keepPositions) {
+		if (data == null) {
+			return new PostingList();
+		}
+
+		int[] pos = new int[1];
+		int header = readVInt(data, pos);
+		int count = header >>> 1;
+		boolean positional = (header & 1) != 0;
+		PostingList result = new PostingList(count, positional && keepPositions);
+
+		int id = 0;
+		for (int i = 0; i < count; i++) {
+			id += readVInt(data, pos);
+			int freq = readVInt(data, pos);
+			result.ids[i] = id;
+			result.freqs[i] = freq;
+
+			if (positional && !keepPositions) {
+				for (int j = 0; j < freq; j++) {
+					readVInt(data, pos);
+				}
+			} else if (positional) {
+				if (result.posSize + freq > result.positions.length) {
+					result.positions = Arrays.copyOf(result.positions, Math.max(result.posSize + freq, result.positions.length * 2));
+				}
+				result.posStarts[i] = result.posSize;
+
+				int position = 0;
+				for (int j = 0; j < freq; j++) {
+					position += readVInt(data, pos);
+					result.positions[result.posSize++] = position;
+				}
+			}
+		}
+		result.size = count;
+
+		return result;
+	}
+
+	//decodes only the ids of an encoded list
+	public static int[] decodeIds(byte[] data) {
+		if (data == null) {
+			return new int[0];
+		}
+
+		int[] pos = new int[1];
+		int header = readVInt(data, pos);
+		int count = header >>> 1;
+		boolean positional = (header & 1) != 0;
+		int[] result = new int[count];
+
+		int id = 0;
+		for (int i = 0; i < count; i++) {
+			id += readVInt(data, pos);
+			result[i] = id;
+			int freq = readVInt(data, pos);
+
+			if (positional) {
+				for (int j = 0; j < freq; j++) {
+					readVInt(data, pos);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	//the number of postings in an encoded list, without decoding the rest of it
+	public static int count(byte[] data) {
+		if (data == null) {
+			return 0;
+		}
+
+		return readVInt(data, new int[1]) >>> 1;
+	}
+
+	static int writeVInt(byte[] buffer, int pos, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+		return pos;
+	}
+
+	//reads a variable length integer starting at pos[0] and moves pos[0] past it
+	static int readVInt(byte[] buffer, int[] pos) {
+		int p = pos[0];
+		byte b = buffer[p++];
+		int value = b & 0x7F;
+		for (int shift = 7; b < 0; shift += 7) {
+			b = buffer[p++];
+			value |= (b & 0x7F) << shift;
+		}
+		pos[0] = p;
+		return value;
+	}
+}
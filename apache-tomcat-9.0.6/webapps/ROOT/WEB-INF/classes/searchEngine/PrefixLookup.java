@@ -0,0 +1,16 @@
+/*
+ * Lists the words of an index that start with a prefix, which a query with a word such as comp* is expanded to
+ * (see Query.expand). A DataManager looks them up in its TermDictionary, an IndexSnapshot in those of all its segments
+ * and a FlatIndex in its term table.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface PrefixLookup {
+
+	//the words that start with the prefix, in order, at most maxWords of them
+	public List<String> getWordsWithPrefix(String prefix, int maxWords) throws IOException;
+}
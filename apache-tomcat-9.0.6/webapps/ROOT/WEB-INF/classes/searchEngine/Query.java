@@ -0,0 +1,291 @@
+/*
+ * The words of a search as typed by the user, turned into stems the same way as the words of a page.
+ * Words between double quotes also form a phrase that a page has to contain, e.g. "hong kong" university
+ *
+ * A query with the operators AND, OR or NOT (in capitals) is read as a boolean query instead:
+ * NOT applies to the word or phrase after it, AND binds tighter than OR, and words next to each other
+ * without an operator are joined with AND, e.g. hong kong OR macau NOT casino
+ * = (hong AND kong) OR (macau AND NOT casino).
+ * The pages matching it are still ranked by their similarity with the words that are not negated.
+ *
+ * A word ending in * (comp*) stands for every word of the index that starts with it, see expand().
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.Vector;
+
+public class Query {
+
+	//the most words of the index a prefix is expanded to
+	public static final int MAX_EXPANSIONS = 50;
+
+	private Vector<String> words = new Vector<String>();
+	private Vector<String[]> phrases = new Vector<String[]>();
+	private Vector<Clause> clauses = new Vector<Clause>();
+
+	//the prefixes of the query, without the *, and those the pages are ranked by (the ones that are not negated)
+	//in a clause a prefix is kept as a term of one word ending in *
+	private Vector<String> prefixes = new Vector<String>();
+	private Vector<String> rankedPrefixes = new Vector<String>();
+	//prefix -> the words of the index it stands for, filled in by expand()
+	private Map<String, String[]> expansions = new HashMap<String, String[]>();
+
+	//a page matches a clause if it has all of the required words and phrases and none of the excluded ones
+	//a single word is kept as a phrase of one word
+	public static class Clause {
+
+		private Vector<String[]> required = new Vector<String[]>();
+		private Vector<String[]> excluded = new Vector<String[]>();
+
+		public String[][] getRequired() {
+			return required.toArray(new String[required.size()][]);
+		}
+
+		public String[][] getExcluded() {
+			return excluded.toArray(new String[excluded.size()][]);
+		}
+
+		private boolean isEmpty() {
+			return required.isEmpty() && excluded.isEmpty();
+		}
+	}
+
+	public Query(String text, StopWords stopWords) {
+		Porter porter = new Porter();
+
+		//every other part is between quotes, a quote that is not closed runs to the end of the query
+		String[] parts = text.split("\"", -1);
+		boolean isBoolean = false;
+		for (int i = 0; i < parts.length; i += 2) {
+			for (String token : parts[i].trim().split("\\s+")) {
+				isBoolean |= isOperator(token);
+			}
+		}
+
+		Clause clause = new Clause();
+		boolean negate = false;
+		for (int i = 0; i < parts.length; i++) {
+			if (i % 2 == 1) {
+				String[] phrase = stems(parts[i], stopWords, porter);
+				if (phrase.length > 0) {
+					phrases.add(phrase);
+					addTerm(clause, phrase, negate);
+					negate = false;
+				}
+				continue;
+			}
+
+			for (String token : parts[i].trim().split("\\s+")) {
+				if (token.matches("[A-Za-z]+\\*")) {
+					addPrefix(clause, token.substring(0, token.length() - 1).toLowerCase(), negate);
+					negate = false;
+				} else if (!isBoolean || !isOperator(token)) {
+					//a token such as "e-mail" gives more than one word, NOT applies to all of them
+					String[] tokenWords = stems(token, stopWords, porter);
+					for (String word : tokenWords) {
+						addTerm(clause, new String[] {word}, negate);
+					}
+					if (tokenWords.length > 0) {
+						negate = false;
+					}
+				} else if (token.equals("OR")) {
+					if (!clause.isEmpty()) {
+						clauses.add(clause);
+					}
+					clause = new Clause();
+					negate = false;
+				} else if (token.equals("NOT")) {
+					negate = true;
+				}
+			}
+		}
+
+		//without operators, only the phrases restrict the pages
+		if (!isBoolean) {
+			clause = new Clause();
+			clause.required.addAll(phrases);
+		}
+		if (!clause.isEmpty()) {
+			clauses.add(clause);
+		}
+	}
+
+	//a copy of the query that shares everything but the expansions
+	private Query(Query query) {
+		words = query.words;
+		phrases = query.phrases;
+		clauses = query.clauses;
+		prefixes = query.prefixes;
+		rankedPrefixes = query.rankedPrefixes;
+	}
+
+	private static boolean isOperator(String token) {
+		return token.equals("AND") || token.equals("OR") || token.equals("NOT");
+	}
+
+	private void addTerm(Clause clause, String[] term, boolean negate) {
+		if (negate) {
+			clause.excluded.add(term);
+			return;
+		}
+
+		clause.required.add(term);
+		for (String word : term) {
+			words.add(word);
+		}
+	}
+
+	private void addPrefix(Clause clause, String prefix, boolean negate) {
+		if (!prefixes.contains(prefix)) {
+			prefixes.add(prefix);
+		}
+
+		String[] term = new String[] {prefix + "*"};
+		if (negate) {
+			clause.excluded.add(term);
+		} else {
+			clause.required.add(term);
+			rankedPrefixes.add(prefix);
+		}
+	}
+
+	//the same splitting as Spider.addKeywords, stop words are dropped from phrases too
+	//since they were not given a position in the page
+	private static String[] stems(String text, StopWords stopWords, Porter porter) {
+		Vector<String> result = new Vector<String>();
+		Tokenizer tokens = new Tokenizer(text);
+		while (tokens.next()) {
+			if (!stopWords.contains(tokens.buffer(), tokens.length())) {
+				result.add(porter.stripAffixes(tokens.buffer(), tokens.length()));
+			}
+		}
+
+		return result.toArray(new String[result.size()]);
+	}
+
+	//the stems of the words the pages are ranked by: all the words of the query, including those in phrases,
+	//except the ones after NOT, followed by the words the prefixes were expanded to
+	public String[] getWords() {
+		Vector<String> result = new Vector<String>(words);
+		for (String prefix : rankedPrefixes) {
+			result.addAll(Arrays.asList(getExpansion(prefix)));
+		}
+
+		return result.toArray(new String[result.size()]);
+	}
+
+	//the prefixes of the query (comp* gives comp)
+	public String[] getPrefixes() {
+		return prefixes.toArray(new String[prefixes.size()]);
+	}
+
+	//a copy of the query with each prefix expanded to the words of the index that start with it,
+	//at most MAX_EXPANSIONS of them; before it is expanded a prefix matches no page
+	//the index only has stems, so the prefix is also looked up as a stem ("computer*" finds the stem "comput")
+	public Query expand(PrefixLookup index) throws IOException {
+		Query result = new Query(this);
+		Porter porter = new Porter();
+		for (String prefix : prefixes) {
+			TreeSet<String> found = new TreeSet<String>(index.getWordsWithPrefix(prefix, MAX_EXPANSIONS));
+			String stem = porter.stripAffixes(prefix);
+			if (!stem.equals("") && !stem.equals(prefix)) {
+				found.addAll(index.getWordsWithPrefix(stem, MAX_EXPANSIONS));
+			}
+
+			Vector<String> expansion = new Vector<String>();
+			for (String word : found) {
+				if (expansion.size() == MAX_EXPANSIONS) {
+					break;
+				}
+				expansion.add(word);
+			}
+			result.expansions.put(prefix, expansion.toArray(new String[expansion.size()]));
+		}
+
+		return result;
+	}
+
+	private String[] getExpansion(String prefix) {
+		String[] expansion = expansions.get(prefix);
+		return expansion == null ? new String[0] : expansion;
+	}
+
+	public String[][] getPhrases() {
+		return phrases.toArray(new String[phrases.size()][]);
+	}
+
+	//the query in disjunctive form, a page has to match one of the clauses
+	//empty if the query does not restrict the pages beyond having one of its words
+	public Clause[] getClauses() {
+		return clauses.toArray(new Clause[clauses.size()]);
+	}
+
+	//the pages of the index that match the clauses of the query, in id order, or null if the query has no clauses
+	//the lists of a clause's required terms are intersected from the shortest one up, so the work follows
+	//the rarest term; a clause with only excluded terms starts from the pages with any of the query words
+	public int[] getMatchingPages(TermPages index) throws IOException {
+		if (clauses.isEmpty()) {
+			return null;
+		}
+
+		int[] result = new int[0];
+		for (Clause clause : clauses) {
+			String[][] required = clause.getRequired();
+			int[] pages;
+
+			if (required.length == 0) {
+				pages = new int[0];
+				for (String word : getWords()) {
+					pages = SortedIds.union(pages, index.getTermPages(new String[] {word}));
+				}
+			} else {
+				int[][] lists = new int[required.length][];
+				for (int i = 0; i < required.length; i++) {
+					lists[i] = getTermPages(index, required[i]);
+				}
+				Arrays.sort(lists, new Comparator<int[]>() {
+					public int compare(int[] a, int[] b) {
+						return a.length - b.length;
+					}
+				});
+
+				pages = lists[0];
+				for (int i = 1; i < lists.length && pages.length > 0; i++) {
+					pages = SortedIds.intersect(pages, lists[i]);
+				}
+			}
+
+			for (String[] term : clause.getExcluded()) {
+				if (pages.length == 0) {
+					break;
+				}
+				pages = SortedIds.subtract(pages, getTermPages(index, term));
+			}
+
+			result = SortedIds.union(result, pages);
+		}
+
+		return result;
+	}
+
+	//the pages of a term of a clause, for a prefix the pages of any of the words it was expanded to
+	private int[] getTermPages(TermPages index, String[] term) throws IOException {
+		if (term.length != 1 || !term[0].endsWith("*")) {
+			return index.getTermPages(term);
+		}
+
+		int[] pages = new int[0];
+		for (String word : getExpansion(term[0].substring(0, term[0].length() - 1))) {
+			pages = SortedIds.union(pages, index.getTermPages(new String[] {word}));
+		}
+
+		return pages;
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Ranks the pages of an index by cosine similarity with a query, from a cursor over the pages of every query word
+ * (see TermCursor) and the norms of the pages (see PageNorms). A DataManager and a FlatIndex only differ
+ * in where they read these from, so both rank the same pages with the same scores.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class QueryScorer {
+
+	//how far the stored upper bounds may be off because of rounding, pages are only skipped by a wider margin
+	private static final double BOUND_SLACK = 1e-9;
+
+	//the best maxResults pages for the query words with the given cursors
+	//queryMagnitude = the length of the query vector (see queryMagnitude)
+	//allowedPages = the pages that may be returned, in id order (see Query.getMatchingPages), or null for any page
+	//deletedPages = pages that must not be returned, in id order, or null (see IndexSnapshot)
+	//
+	//pages are visited in id order, walking all the query words' lists together (MaxScore).
+	//Once maxResults pages have been found, the words whose upper bounds add up to less than the worst of them
+	//cannot put a page into the results on their own, so only pages from the other words' lists are considered,
+	//and a page is dropped as soon as the words found on it cannot lift it above the worst result.
+	//The results are the same as topPagesExhaustive().
+	public static TopKHeap topPages(TermCursor[] terms, double queryMagnitude, int[] allowedPages, int[] deletedPages,
+			PageNorms norms, int maxResults) throws IOException {
+		TopKHeap topPages = new TopKHeap(maxResults);
+
+		//the words by increasing upper bound, and the sum of the bounds of each word and the ones before it
+		TermCursor[] byBound = terms.clone();
+		Arrays.sort(byBound, new Comparator<TermCursor>() {
+			public int compare(TermCursor a, TermCursor b) {
+				return Double.compare(a.upperBound(), b.upperBound());
+			}
+		});
+		double[] boundSums = new double[byBound.length];
+		double boundSum = 0;
+		for (int i = 0; i < byBound.length; i++) {
+			boundSum += byBound[i].upperBound();
+			boundSums[i] = boundSum;
+		}
+
+		//words before firstEssential can only add to pages found through the later words
+		int firstEssential = 0;
+		while (true) {
+			while (firstEssential < byBound.length && topPages.isFull()
+					&& cannotEnter(boundSums[firstEssential], queryMagnitude, topPages)) {
+				firstEssential++;
+			}
+
+			int currPageID = TermCursor.END;
+			for (int i = firstEssential; i < byBound.length; i++) {
+				currPageID = Math.min(currPageID, byBound[i].page());
+			}
+			if (currPageID == TermCursor.END) {
+				break;
+			}
+
+			//pages that are not allowed are skipped, then the bound of the page from the essential words on it
+			//is checked against the other words one by one
+			boolean skip = !isAllowed(currPageID, allowedPages, deletedPages);
+			double bound = 0;
+			for (int i = firstEssential; i < byBound.length; i++) {
+				if (byBound[i].page() == currPageID) {
+					bound += byBound[i].upperBound();
+				}
+			}
+			for (int i = firstEssential - 1; i >= 0 && !skip; i--) {
+				if (topPages.isFull() && cannotEnter(bound + boundSums[i], queryMagnitude, topPages)) {
+					skip = true;
+				} else if (byBound[i].advance(currPageID) == currPageID) {
+					bound += byBound[i].upperBound();
+				}
+			}
+			if (!skip && topPages.isFull() && cannotEnter(bound, queryMagnitude, topPages)) {
+				skip = true;
+			}
+
+			if (!skip) {
+				//adds up the words in query order, so the score is exactly the one topPagesExhaustive() gives
+				double innerProduct = 0;
+				for (TermCursor term : terms) {
+					if (term.page() == currPageID) {
+						innerProduct += DataManager.termWeight(term.freq(), term.inTitle(), term.idf(), 1) * term.idf();
+					}
+				}
+				offerPage(topPages, currPageID, innerProduct, queryMagnitude, norms);
+			}
+
+			for (int i = firstEssential; i < byBound.length; i++) {
+				if (byBound[i].page() == currPageID) {
+					byBound[i].next();
+				}
+			}
+		}
+
+		return topPages;
+	}
+
+	//scores every page that has one of the query words, used to check the results of topPages()
+	public static TopKHeap topPagesExhaustive(TermCursor[] terms, double queryMagnitude, int[] allowedPages,
+			int[] deletedPages, PageNorms norms, int maxResults) throws IOException {
+		ScoreAccumulator innerProducts = new ScoreAccumulator();
+
+		for (TermCursor term : terms) {
+			for (; term.page() != TermCursor.END; term.next()) {
+				//the division by the page's maximum term frequency is left until the end
+				double weight = DataManager.termWeight(term.freq(), term.inTitle(), term.idf(), 1);
+				innerProducts.add(term.page(), weight * term.idf());
+			}
+		}
+
+		TopKHeap topPages = new TopKHeap(maxResults);
+		for (int slot = 0; slot < innerProducts.slots(); slot++) {
+			int currPageID = innerProducts.pageAt(slot);
+			if (currPageID != ScoreAccumulator.EMPTY && isAllowed(currPageID, allowedPages, deletedPages)) {
+				offerPage(topPages, currPageID, innerProducts.scoreAt(slot), queryMagnitude, norms);
+			}
+		}
+
+		return topPages;
+	}
+
+	//the length of the query vector, which has every word with a weight, also the ones that are not in this index
+	public static double queryMagnitude(String[] queryWords, double[] queryWeights) {
+		double queryMagnitude = 0;
+		for (int q = 0; q < queryWords.length; q++) {
+			if (!Double.isNaN(queryWeights[q]) && !isRepeated(queryWords, q)) {
+				queryMagnitude += queryWeights[q] * queryWeights[q];
+			}
+		}
+
+		return Math.sqrt(queryMagnitude);
+	}
+
+	//true if the query word at q is also earlier in the query, a word that is there twice counts once
+	static boolean isRepeated(String[] queryWords, int q) {
+		for (int i = 0; i < q; i++) {
+			if (queryWords[i].equals(queryWords[q])) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isAllowed(int pageID, int[] allowedPages, int[] deletedPages) {
+		return (allowedPages == null || SortedIds.contains(allowedPages, pageID))
+				&& (deletedPages == null || !SortedIds.contains(deletedPages, pageID));
+	}
+
+	//true if a page whose inner product with the query is at most bound cannot make it into the full heap
+	//pages with the same score as the worst result lose to it, since they have a larger id
+	private static boolean cannotEnter(double bound, double queryMagnitude, TopKHeap topPages) {
+		return bound * (1 + BOUND_SLACK) / queryMagnitude < topPages.minScore();
+	}
+
+	//finishes the similarity of a page from its inner product with the query and offers it to the heap
+	private static void offerPage(TopKHeap topPages, int pageID, double innerProduct, double queryMagnitude,
+			PageNorms norms) throws IOException {
+		double pageMagnitude = norms.getNorm(pageID);
+		if (pageMagnitude == 0) {
+			return;
+		}
+
+		double similarity = innerProduct / norms.getMaxTF(pageID) / (pageMagnitude * queryMagnitude);
+		if (similarity > 0) {
+			topPages.offer(pageID, similarity);
+		}
+	}
+}
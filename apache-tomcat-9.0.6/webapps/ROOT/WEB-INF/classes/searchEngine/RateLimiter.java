@@ -0,0 +1,43 @@
+/*
+ * Keeps a merge from writing more than a given number of megabytes per second, so that it leaves the disk to the
+ * searches and the crawler. The merge calls pause() with the number of bytes it has just written,
+ * which sleeps for as long as the merge is ahead of the rate.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+public class RateLimiter {
+
+	private double bytesPerSecond;
+	private long start;
+	private long bytes = 0;
+
+	//mbPerSec = 0 for no limit
+	public RateLimiter(double mbPerSec) {
+		this.bytesPerSecond = mbPerSec * 1024 * 1024;
+		this.start = System.nanoTime();
+	}
+
+	public void pause(long written) throws IOException {
+		if (bytesPerSecond <= 0) {
+			return;
+		}
+
+		bytes += written;
+		long due = start + (long) (bytes / bytesPerSecond * 1e9);
+		long wait = due - System.nanoTime();
+		if (wait <= 0) {
+			return;
+		}
+
+		try {
+			Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("the merge was interrupted");
+		}
+	}
+}
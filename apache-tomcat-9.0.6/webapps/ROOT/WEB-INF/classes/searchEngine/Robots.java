@@ -0,0 +1,224 @@
+/*
+ * What the robots.txt of a host lets this crawler do: which pages it may fetch and how long it should wait between them.
+ * The lines of the group for USAFreshMilkSpider are used if the file has one, otherwise those of the group for "*";
+ * a group is for us only if one of its User-agent lines is our name exactly, in any case (RFC 9309).
+ * Of the Allow and Disallow lines that match the path of a page the longest one decides, Allow if they are as long;
+ * a * in a line matches any characters and a $ at its end matches the end of the path.
+ * A host without a robots.txt (a 4xx answer) allows everything, a host whose robots.txt gives a server error nothing.
+ * A host that does not send its robots.txt in time (see TIMEOUT) allows everything as well, so it cannot hold up the crawl.
+ */
+
+package searchEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class Robots {
+
+	//the name the crawler gives in its requests and looks for in robots.txt
+	public static final String AGENT = "USAFreshMilkSpider";
+
+	//the most of a robots.txt that is read, and the longest delay between pages a host can ask for
+	private static final int MAX_SIZE = 512 * 1024;
+	private static final long MAX_CRAWL_DELAY = 60 * 1000;
+	//the milliseconds to wait for the host to connect, and for it to send robots.txt, while the frontier holds back the host
+	private static final int TIMEOUT = 10 * 1000;
+
+	//an Allow or Disallow line
+	private static class Rule {
+		Pattern pattern;
+		int length;
+		boolean allow;
+
+		Rule(String path, boolean allow) {
+			this.length = path.length();
+			this.allow = allow;
+
+			boolean anchored = path.endsWith("$");
+			if (anchored) {
+				path = path.substring(0, path.length() - 1);
+			}
+			StringBuilder regex = new StringBuilder();
+			for (String part : path.split("\\*", -1)) {
+				if (regex.length() > 0) {
+					regex.append(".*");
+				}
+				regex.append(Pattern.quote(part));
+			}
+			if (anchored) {
+				regex.append('$');
+			}
+			this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+		}
+
+		boolean matches(String path) {
+			return pattern.matcher(path).lookingAt();
+		}
+	}
+
+	private List<Rule> rules = new ArrayList<Rule>();
+	private long crawlDelay = 0;
+
+	private Robots() {
+	}
+
+	//allows everything
+	public static Robots allowAll() {
+		return new Robots();
+	}
+
+	public static Robots disallowAll() {
+		Robots result = new Robots();
+		result.rules.add(new Rule("/", false));
+		return result;
+	}
+
+	//reads the robots.txt of the given host (protocol, host and port, e.g. http://www.cse.ust.hk)
+	public static Robots read(String host) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(host + "/robots.txt").openConnection();
+			connection.setRequestProperty("User-Agent", AGENT);
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+
+			int code = connection.getResponseCode();
+			if (code >= 500) {
+				return disallowAll();
+			} else if (code < 200 || code >= 300) {
+				return allowAll();
+			}
+
+			return parse(readText(connection.getInputStream(), System.currentTimeMillis() + TIMEOUT));
+		} catch (IOException e) {
+			//the pages of a host that cannot be reached or does not answer in time fail on their own
+			System.out.println("8 " + e);
+			return allowAll();
+		} catch (ClassCastException e) {
+			//not an http url, so there is no robots.txt
+			return allowAll();
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	//deadline = the time by which the whole file has to be read, a host sending it slowly bit by bit times out as well
+	private static String readText(InputStream in, long deadline) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try {
+			int read;
+			while (out.size() < MAX_SIZE && (read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				if (System.currentTimeMillis() > deadline) {
+					throw new SocketTimeoutException("robots.txt took too long to read");
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	//the rules for this crawler in the text of a robots.txt
+	public static Robots parse(String text) {
+		Robots ours = new Robots();
+		Robots any = new Robots();
+		boolean named = false;
+
+		//the agents the current group is for; a user-agent line after the rules of a group starts a new group
+		boolean forUs = false;
+		boolean forAny = false;
+		boolean inRules = false;
+
+		for (String line : text.split("\r\n|\r|\n")) {
+			int comment = line.indexOf('#');
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				continue;
+			}
+			String key = line.substring(0, colon).trim().toLowerCase();
+			String value = line.substring(colon + 1).trim();
+
+			if (key.equals("user-agent")) {
+				if (inRules) {
+					forUs = false;
+					forAny = false;
+					inRules = false;
+				}
+				if (value.equals("*")) {
+					forAny = true;
+				} else if (value.equalsIgnoreCase(AGENT)) {
+					forUs = true;
+					named = true;
+				}
+			} else if (key.equals("allow") || key.equals("disallow") || key.equals("crawl-delay")) {
+				inRules = true;
+				if (forUs) {
+					ours.add(key, value);
+				}
+				if (forAny) {
+					any.add(key, value);
+				}
+			}
+		}
+
+		return named ? ours : any;
+	}
+
+	private void add(String key, String value) {
+		if (key.equals("crawl-delay")) {
+			try {
+				crawlDelay = Math.min((long) (Double.parseDouble(value) * 1000), MAX_CRAWL_DELAY);
+			} catch (NumberFormatException e) {
+				//not a number of seconds, so there is no delay
+			}
+		} else if (!value.equals("")) {
+			//an empty Disallow allows everything, an empty Allow says nothing
+			rules.add(new Rule(value, key.equals("allow")));
+		}
+	}
+
+	//whether the page at the given url may be fetched
+	public boolean isAllowed(String url) {
+		String path;
+		try {
+			path = new URL(url).getFile();
+		} catch (MalformedURLException e) {
+			return true;
+		}
+		if (path.equals("")) {
+			path = "/";
+		}
+
+		Rule decides = null;
+		for (Rule rule : rules) {
+			if (rule.matches(path) && (decides == null || rule.length > decides.length
+					|| (rule.length == decides.length && rule.allow))) {
+				decides = rule;
+			}
+		}
+
+		return decides == null || decides.allow;
+	}
+
+	//how long to wait between the pages of the host in milliseconds, 0 if robots.txt does not say
+	public long getCrawlDelay() {
+		return crawlDelay;
+	}
+}
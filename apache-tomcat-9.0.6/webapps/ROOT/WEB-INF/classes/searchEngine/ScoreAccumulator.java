@@ -0,0 +1,96 @@
+/*
+ * Score totals per page while the posting lists of a query are walked.
+ * An open addressing hash table of int page ids to double scores, so adding to a score allocates nothing.
+ */
+
+package searchEngine;
+
+import java.util.Arrays;
+
+public class ScoreAccumulator {
+
+	public static final int EMPTY = -1;
+
+	private int[] keys;
+	private double[] values;
+	private int size;
+
+	public ScoreAccumulator() {
+		this(64);
+	}
+
+	//expectedSize = roughly how many pages will get a score
+	public ScoreAccumulator(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity *= 2;
+		}
+
+		keys = new int[capacity];
+		values = new double[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void add(int pageID, double score) {
+		int slot = find(pageID);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = pageID;
+			size++;
+		}
+		values[slot] += score;
+
+		if (size * 2 > keys.length) {
+			grow();
+		}
+	}
+
+	public double get(int pageID) {
+		int slot = find(pageID);
+		return keys[slot] == EMPTY ? 0 : values[slot];
+	}
+
+	//the table is walked slot by slot: pageAt returns EMPTY for an empty slot
+	public int slots() {
+		return keys.length;
+	}
+
+	public int pageAt(int slot) {
+		return keys[slot];
+	}
+
+	public double scoreAt(int slot) {
+		return values[slot];
+	}
+
+	//the slot holding the page, or the empty slot where it would go
+	private int find(int pageID) {
+		int mask = keys.length - 1;
+		int hash = pageID * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != pageID) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		double[] oldValues = values;
+
+		keys = new int[oldKeys.length * 2];
+		values = new double[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Checks that the pruned scoring of querySimilarity gives the same results as scoring every page
+ * (querySimilarityExhaustive), by running random queries of the words of a database through both.
+ * Run it after changing how pages are scored, on a crawled database, e.g.
+ *	java -cp lib/jdbm-1.0.jar:.. searchEngine.ScoringCheckProgram recman 2000
+ * The arguments are the database (recman by default, or a segment such as index/seg_1) and the number of queries.
+ * Prints the queries whose results differ and exits with 1 if there are any.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+public class ScoringCheckProgram {
+
+	//the number of results asked for, picked at random for each query
+	private static final int[] RESULT_COUNTS = {1, 5, 10, 50};
+	private static final int MAX_QUERY_WORDS = 5;
+	//the queries are the same on every run
+	private static final long SEED = 1;
+
+	public static void main(String[] args) {
+		String name = args.length > 0 ? args[0] : DataManager.MANAGER_ID;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		int mismatches = 0;
+		try {
+			DataManager dm = new DataManager(name, true);
+			try {
+				List<String> words = dm.getWordsWithPrefix("", Integer.MAX_VALUE);
+				if (words.isEmpty()) {
+					System.out.println(name + " has no words");
+					System.exit(1);
+				}
+
+				Random random = new Random(SEED);
+				long prunedTime = 0;
+				long exhaustiveTime = 0;
+				for (int q = 0; q < queries; q++) {
+					String[] query = new String[1 + random.nextInt(MAX_QUERY_WORDS)];
+					for (int i = 0; i < query.length; i++) {
+						query[i] = words.get(random.nextInt(words.size()));
+					}
+					int maxResults = RESULT_COUNTS[random.nextInt(RESULT_COUNTS.length)];
+
+					//the first run reads the posting lists into the cache, so both are timed with them there
+					dm.querySimilarity(query, maxResults);
+					long start = System.nanoTime();
+					Vector<String> pruned = dm.querySimilarity(query, maxResults);
+					long middle = System.nanoTime();
+					Vector<String> exhaustive = dm.querySimilarityExhaustive(query, null, maxResults);
+					long end = System.nanoTime();
+					prunedTime += middle - start;
+					exhaustiveTime += end - middle;
+
+					if (!pruned.equals(exhaustive)) {
+						mismatches++;
+						System.out.println(Arrays.toString(query) + " top " + maxResults);
+						System.out.println("  querySimilarity:           " + pruned);
+						System.out.println("  querySimilarityExhaustive: " + exhaustive);
+					}
+				}
+
+				System.out.println(queries + " queries of " + words.size() + " words, " + mismatches + " with different results");
+				System.out.println("querySimilarity " + prunedTime / 1000000 + " ms, querySimilarityExhaustive "
+						+ exhaustiveTime / 1000000 + " ms");
+			} finally {
+				dm.close();
+			}
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ * An index that the Searcher can search: the segments of one generation of the segment list (IndexSnapshot),
+ * or the same index exported to a single flat file (FlatIndex).
+ * A search acquires the index it starts with and releases it when it is done.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface SearchIndex {
+
+	//the generation of the segment list the index was opened from
+	public long getGeneration();
+
+	public void acquire();
+
+	//the index is closed once everyone who acquired it, and the Searcher that opened it, has released it
+	public void release() throws IOException;
+
+	//ranks the pages for the query, best first
+	public List<SearchResult> search(Query query, int maxResults) throws IOException;
+}
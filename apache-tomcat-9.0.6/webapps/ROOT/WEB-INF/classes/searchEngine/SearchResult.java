@@ -0,0 +1,64 @@
+/*
+ * One page of the search results, with everything the search page shows about it.
+ */
+
+package searchEngine;
+
+import java.util.List;
+
+public class SearchResult {
+
+	private int pageID;
+	private double score;
+	private String url;
+	private String title;
+	private String modDate;
+	private String pageSize;
+	//the five most frequent keywords as "word freq;word freq"
+	private String mostFreqKeywords;
+	private List<String> childLinks;
+
+	public SearchResult(int pageID, double score, String url, String title, String modDate, String pageSize,
+			String mostFreqKeywords, List<String> childLinks) {
+		this.pageID = pageID;
+		this.score = score;
+		this.url = url;
+		this.title = title;
+		this.modDate = modDate;
+		this.pageSize = pageSize;
+		this.mostFreqKeywords = mostFreqKeywords;
+		this.childLinks = childLinks;
+	}
+
+	public int getPageID() {
+		return pageID;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public String getURL() {
+		return url;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getModifiedDate() {
+		return modDate;
+	}
+
+	public String getPageSize() {
+		return pageSize;
+	}
+
+	public String getMostFreqKeywords() {
+		return mostFreqKeywords;
+	}
+
+	public List<String> getChildLinks() {
+		return childLinks;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * The search index shared by every request of the search page, opened once when the webapp starts.
+ * Every search uses the snapshot of the index that is current when it starts (see IndexSnapshot), and a search
+ * that starts after the indexer has published new segments opens them first, so the webapp never has to be
+ * restarted and never waits for the indexer. Searches collect everything the page shows, the page never touches
+ * the database itself.
+ * When the indexer has exported the current segment list to a flat file (see IndexWriter.exportFlatIndex),
+ * searches map that file instead of opening the segments (see FlatIndex).
+ */
+
+package searchEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class Searcher {
+
+	//the name of the servlet context attribute that holds the shared Searcher, see SearcherListener
+	public static final String ATTRIBUTE = "searchEngine.searcher";
+
+	private static final String STOP_WORD_DIC_FILE = "stopwords.txt";
+
+	private File indexDir;
+	private SearchIndex index;
+	private StopWords stopWords;
+
+	public Searcher() throws IOException {
+		this(IndexWriter.INDEX_DIR);
+	}
+
+	public Searcher(String indexPath) throws IOException {
+		indexDir = new File(indexPath);
+		IndexManifest manifest = IndexManifest.read(indexDir);
+		if (!manifest.exists() && new File(DataManager.MANAGER_ID + ".db").exists()) {
+			//a database from before the index was split into segments, until the indexer writes segments
+			index = IndexSnapshot.openDatabase(DataManager.MANAGER_ID);
+		} else {
+			index = open(manifest, null);
+		}
+		//the same stop words the crawler dropped from the pages
+		stopWords = StopWords.get(STOP_WORD_DIC_FILE);
+	}
+
+	//reads the query the way the pages were read, see Query
+	public Query parse(String text) {
+		return new Query(text, stopWords);
+	}
+
+	public List<SearchResult> search(Query query, int maxResults) throws IOException {
+		SearchIndex current = acquire();
+		try {
+			return current.search(query, maxResults);
+		} finally {
+			current.release();
+		}
+	}
+
+	private synchronized SearchIndex acquire() throws IOException {
+		if (index == null) {
+			throw new IOException("the searcher is closed");
+		}
+
+		refresh();
+		index.acquire();
+		return index;
+	}
+
+	//switches to the newest segment list if the indexer has published one since the last search
+	//if its segments cannot be opened, e.g. because the indexer has already replaced them, the old index is kept
+	private void refresh() {
+		try {
+			IndexManifest manifest = IndexManifest.read(indexDir);
+			if (manifest.exists() && manifest.getGeneration() != index.getGeneration()) {
+				SearchIndex old = index;
+				index = open(manifest, old);
+				old.release();
+			}
+		} catch (IOException e) {
+			System.out.println("5 " + e);
+		}
+	}
+
+	//the flat file if it was exported for this generation of the segment list, otherwise the segments,
+	//sharing the ones that are open in the previous index
+	private SearchIndex open(IndexManifest manifest, SearchIndex previous) throws IOException {
+		File flatFile = new File(indexDir, FlatIndex.FILE_NAME);
+		if (manifest.exists() && FlatIndex.readGeneration(flatFile) == manifest.getGeneration()) {
+			return FlatIndex.open(flatFile);
+		}
+
+		return IndexSnapshot.open(indexDir, manifest, previous instanceof IndexSnapshot ? (IndexSnapshot) previous : null);
+	}
+
+	//searches that are still running keep their index open until they are done
+	public synchronized void close() throws IOException {
+		if (index != null) {
+			index.release();
+			index = null;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Opens the shared Searcher when the webapp starts and closes it when the webapp stops.
+ * Registered in WEB-INF/web.xml.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+public class SearcherListener implements ServletContextListener {
+
+	public void contextInitialized(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		try {
+			context.setAttribute(Searcher.ATTRIBUTE, new Searcher());
+		} catch (IOException e) {
+			//the search page says the index is not available
+			context.log("could not open the search index", e);
+		}
+	}
+
+	public void contextDestroyed(ServletContextEvent event) {
+		ServletContext context = event.getServletContext();
+		Searcher searcher = (Searcher) context.getAttribute(Searcher.ATTRIBUTE);
+		if (searcher == null) {
+			return;
+		}
+
+		context.removeAttribute(Searcher.ATTRIBUTE);
+		try {
+			searcher.close();
+		} catch (IOException e) {
+			context.log("could not close the search index", e);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copies the pages of several segments that are not deleted into one new segment, a posting list at a time:
+ * the body and title lists of every word, merged over the segments in word order, then the non-inverted entry,
+ * record and links of every page, all with the word and page ids of the new segment.
+ * Deleted pages are left out, which is how the space they take is given back, and words left on no page are dropped.
+ * The statistics of the new segment are calculated when the merge is committed (see IndexWriter.commitMerge).
+ */
+
+package searchEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.Vector;
+
+public class SegmentMerger {
+
+	private List<String> names;
+	private DataManager[] sources;
+	//the deleted pages of each segment when the merge started, in id order
+	private int[][] deletedPages;
+	private DataManager target;
+	private RateLimiter limiter;
+
+	//for each segment, the page and word ids in the new segment of the pages and words that are copied
+	private List<Map<Integer, Integer>> pageMaps;
+	private List<Map<Integer, Integer>> wordMaps;
+
+	public SegmentMerger(File dir, List<String> names, int[][] deletedPages, DataManager target, RateLimiter limiter) throws IOException {
+		this.names = names;
+		this.deletedPages = deletedPages;
+		this.target = target;
+		this.limiter = limiter;
+
+		sources = new DataManager[names.size()];
+		pageMaps = new Vector<Map<Integer, Integer>>();
+		wordMaps = new Vector<Map<Integer, Integer>>();
+		try {
+			for (int i = 0; i < sources.length; i++) {
+				sources[i] = new DataManager(new File(dir, names.get(i)).getPath(), true);
+				pageMaps.add(new HashMap<Integer, Integer>());
+				wordMaps.add(new HashMap<Integer, Integer>());
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	//the names of the merged segments, in the order of the segment list
+	public List<String> getSegments() {
+		return names;
+	}
+
+	public DataManager getTarget() {
+		return target;
+	}
+
+	public int[] getDeletedPages(int source) {
+		return deletedPages[source];
+	}
+
+	public void merge() throws IOException {
+		//the documents get their new ids first, segment by segment
+		for (int i = 0; i < sources.length; i++) {
+			for (int pageID : sources[i].getDocuments()) {
+				if (!SortedIds.contains(deletedPages[i], pageID)) {
+					pageMaps.get(i).put(pageID, target.getPageID(sources[i].getURL(pageID)));
+				}
+			}
+		}
+
+		TreeSet<String> words = new TreeSet<String>();
+		for (DataManager source : sources) {
+			words.addAll(source.getWords());
+		}
+		for (String word : words) {
+			copyPostings(word);
+		}
+
+		for (int i = 0; i < sources.length; i++) {
+			for (Map.Entry<Integer, Integer> page : pageMaps.get(i).entrySet()) {
+				PostingList keywords = sources[i].getPostings(DataManager.INDEX_ID, page.getKey());
+				PostingList copy = new PostingList(keywords.size());
+				for (int k = 0; k < keywords.size(); k++) {
+					copy.add(wordMaps.get(i).get(keywords.id(k)), keywords.freq(k));
+				}
+				limiter.pause(target.putPostings(DataManager.INDEX_ID, page.getValue(), copy));
+			}
+
+			//the record and links of every crawled page, also of the ones that have no keywords
+			for (String url : sources[i].getCrawledURLs()) {
+				int pageID = sources[i].lookupPageID(url);
+				if (SortedIds.contains(deletedPages[i], pageID)) {
+					continue;
+				}
+
+				int newPageID = target.getPageID(url);
+				target.putPageRecord(newPageID, sources[i].getPageRecord(pageID));
+
+				int[] links = sources[i].getLinks(pageID);
+				if (links.length > 0) {
+					PostingList children = new PostingList(links.length);
+					for (int childID : links) {
+						int newChildID = target.getPageID(sources[i].getURL(childID));
+						if (!children.contains(newChildID)) {
+							children.add(newChildID, 1);
+						}
+					}
+					limiter.pause(target.putPostings(DataManager.LINKS_ID, newPageID, children));
+				}
+			}
+		}
+	}
+
+	//writes the merged body and title lists of the word, if it is still on a page that is copied
+	private void copyPostings(String word) throws IOException {
+		int[] sourceWordIDs = new int[sources.length];
+		for (int i = 0; i < sources.length; i++) {
+			sourceWordIDs[i] = sources[i].lookupWordID(word);
+		}
+
+		PostingList body = mergePostings(DataManager.BODY_ID, sourceWordIDs);
+		PostingList title = mergePostings(DataManager.TITLE_ID, sourceWordIDs);
+		if (body.size() == 0 && title.size() == 0) {
+			return;
+		}
+
+		int wordID = target.getWordID(word);
+		for (int i = 0; i < sources.length; i++) {
+			if (sourceWordIDs[i] != DataManager.NOT_FOUND) {
+				wordMaps.get(i).put(sourceWordIDs[i], wordID);
+			}
+		}
+		if (body.size() > 0) {
+			limiter.pause(target.putPostings(DataManager.BODY_ID, wordID, body));
+		}
+		if (title.size() > 0) {
+			limiter.pause(target.putPostings(DataManager.TITLE_ID, wordID, title));
+		}
+	}
+
+	//the postings of the copied pages from the word's lists in the given index of every segment
+	//the merged list has positions only if all the lists have them, e.g. not if one is from a database older than positions
+	private PostingList mergePostings(String id, int[] sourceWordIDs) throws IOException {
+		PostingList[] lists = new PostingList[sources.length];
+		boolean positional = true;
+		for (int i = 0; i < sources.length; i++) {
+			if (sourceWordIDs[i] != DataManager.NOT_FOUND) {
+				lists[i] = sources[i].getPostings(id, sourceWordIDs[i]);
+				positional &= lists[i].isPositional();
+			}
+		}
+
+		PostingList result = new PostingList(4, positional);
+		for (int i = 0; i < sources.length; i++) {
+			if (lists[i] == null) {
+				continue;
+			}
+
+			PostingList postings = lists[i];
+			for (int k = 0; k < postings.size(); k++) {
+				Integer pageID = pageMaps.get(i).get(postings.id(k));
+				if (pageID == null) {
+					continue;
+				}
+
+				if (positional) {
+					IntList positions = new IntList(postings.freq(k));
+					for (int j = 0; j < postings.freq(k); j++) {
+						positions.add(postings.position(k, j));
+					}
+					result.add(pageID, positions);
+				} else {
+					result.add(pageID, postings.freq(k));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	//the ids in the new segment of the segment's pages that have been deleted since the merge started
+	//deletedPages = the deleted pages of the segment now, or null if the segment has been dropped altogether
+	public int[] getNewDeletes(int source, int[] deletedPages) {
+		IntList result = new IntList();
+		for (Map.Entry<Integer, Integer> page : pageMaps.get(source).entrySet()) {
+			if (deletedPages == null || SortedIds.contains(deletedPages, page.getKey())) {
+				result.add(page.getValue());
+			}
+		}
+
+		return result.toArray();
+	}
+
+	//closes the merged segments, the new segment is left to the writer
+	public void close() throws IOException {
+		for (DataManager source : sources) {
+			if (source != null) {
+				source.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * One segment of the index opened read only, shared by every snapshot that has the segment (see IndexSnapshot).
+ * DataManager is not thread safe, so the methods of a segment take turns, while searches can use different segments
+ * at the same time. The segment is closed when the last snapshot that has it is released.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+public class SegmentReader {
+
+	private String name;
+	private DataManager dm;
+
+	//the number of snapshots that have the segment
+	private int refCount = 1;
+
+	//name = the name of the segment in the segment list, path = the name of its database files
+	public SegmentReader(String name, String path) throws IOException {
+		this.name = name;
+		this.dm = new DataManager(path, true);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	synchronized void incRef() {
+		refCount++;
+	}
+
+	synchronized void decRef() throws IOException {
+		refCount--;
+		if (refCount == 0) {
+			dm.close();
+			dm = null;
+		}
+	}
+
+	//the number of pages in the segment, including deleted ones
+	public synchronized int getDocumentCount() throws IOException {
+		return dm.getDocumentCount();
+	}
+
+	//the number of pages with the word, leaving out the deleted pages (in id order)
+	public synchronized int getDocumentFrequency(String word, int[] deletedPages) throws IOException {
+		if (deletedPages.length == 0) {
+			return dm.getDocumentFrequency(word);
+		}
+
+		int[] pages = dm.getTermPages(new String[] {word});
+		return pages.length - SortedIds.intersect(pages, deletedPages).length;
+	}
+
+	//the best pages of the segment for the query with their scores, see DataManager.topPages
+	public synchronized TopKHeap search(Query query, double[] queryWeights, int[] deletedPages, int maxResults) throws IOException {
+		return dm.topPages(query.getWords(), queryWeights, dm.getMatchingPages(query), deletedPages, maxResults);
+	}
+
+	//everything the search page shows about a page of the segment
+	public synchronized SearchResult getResult(int pageID, double score) throws IOException {
+		List<String> childLinks = new Vector<String>();
+		for (int childID : dm.getLinks(pageID)) {
+			childLinks.add(dm.getURL(childID));
+		}
+
+		return new SearchResult(pageID, score, dm.getURL(pageID), dm.getPageTitle(pageID), dm.getModifiedDate(pageID),
+				dm.getPageSize(pageID), dm.retrieveMostFreqKeywords(pageID), childLinks);
+	}
+
+	//the id of the page if the segment has it as a document that can be searched, otherwise NOT_FOUND
+	public synchronized int lookupDocument(String url) throws IOException {
+		int pageID = dm.lookupPageID(url);
+		return pageID != DataManager.NOT_FOUND && dm.hasDocument(pageID) ? pageID : DataManager.NOT_FOUND;
+	}
+
+	public synchronized List<String> getWordsWithPrefix(String prefix, int maxWords) throws IOException {
+		return dm.getWordsWithPrefix(prefix, maxWords);
+	}
+
+	public synchronized Map<String, String[]> getCacheValidators() throws IOException {
+		return dm.getCacheValidators();
+	}
+
+	//the links of the page, or null if the page was not crawled into this segment
+	public synchronized List<String> getLinkedURLs(String url) throws IOException {
+		return dm.isCrawled(url) ? dm.getLinkedURLs(url) : null;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Set operations on arrays of ids sorted in increasing order, such as the pages of a posting list.
+ * Intersections and differences walk the shorter array and gallop through the longer one,
+ * so their cost follows the shorter array instead of the total length.
+ */
+
+package searchEngine;
+
+import java.util.Arrays;
+
+public class SortedIds {
+
+	//returns the first index from "from" on (and before size) whose id is at least the given id, or size if there is none
+	//gallops ahead in doubling steps and then binary searches, so long runs of ids are skipped in O(log n)
+	public static int seek(int[] ids, int size, int from, int id) {
+		if (from >= size || ids[from] >= id) {
+			return from;
+		}
+
+		int low = from;
+		int step = 1;
+		while (low + step < size && ids[low + step] < id) {
+			low += step;
+			step *= 2;
+		}
+
+		int high = Math.min(low + step, size);
+		low++;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (ids[mid] < id) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	public static boolean contains(int[] ids, int id) {
+		return Arrays.binarySearch(ids, id) >= 0;
+	}
+
+	//the ids that are in both arrays
+	public static int[] intersect(int[] a, int[] b) {
+		if (a.length > b.length) {
+			return intersect(b, a);
+		}
+
+		int[] result = new int[a.length];
+		int size = 0;
+		int j = 0;
+		for (int i = 0; i < a.length && j < b.length; i++) {
+			j = seek(b, b.length, j, a[i]);
+			if (j < b.length && b[j] == a[i]) {
+				result[size++] = a[i];
+			}
+		}
+
+		return Arrays.copyOf(result, size);
+	}
+
+	//the ids that are in either array
+	public static int[] union(int[] a, int[] b) {
+		if (a.length == 0) {
+			return b;
+		}
+		if (b.length == 0) {
+			return a;
+		}
+
+		int[] result = new int[a.length + b.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[size++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[size++] = b[j++];
+			} else {
+				result[size++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) {
+			result[size++] = a[i++];
+		}
+		while (j < b.length) {
+			result[size++] = b[j++];
+		}
+
+		return Arrays.copyOf(result, size);
+	}
+
+	//the ids of a that are not in b
+	public static int[] subtract(int[] a, int[] b) {
+		int[] result = new int[a.length];
+		int size = 0;
+		int j = 0;
+		for (int i = 0; i < a.length; i++) {
+			j = seek(b, b.length, j, a[i]);
+			if (j == b.length || b[j] != a[i]) {
+				result[size++] = a[i];
+			}
+		}
+
+		return Arrays.copyOf(result, size);
+	}
+}
@@ -7,35 +7,38 @@
 
 package searchEngine;
 
-import org.htmlparser.beans.StringBean;
-import org.htmlparser.beans.LinkBean;
 import org.htmlparser.Node;
-import org.htmlparser.NodeFilter;
-import org.htmlparser.filters.AndFilter;
-import org.htmlparser.filters.NodeClassFilter;
 
-import org.htmlparser.filters.TagNameFilter;
 import org.htmlparser.tags.TitleTag;
-import org.htmlparser.tags.BodyTag;
-import org.htmlparser.Node;
+import org.htmlparser.tags.BaseHrefTag;
 
 import org.htmlparser.tags.LinkTag;
-import org.htmlparser.util.NodeList;
+import org.htmlparser.tags.ScriptTag;
+import org.htmlparser.tags.StyleTag;
 import org.htmlparser.util.ParserException;
-import org.htmlparser.Parser;
-
-import java.util.StringTokenizer;
-import java.util.HashSet;
+import org.htmlparser.util.Translate;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.lexer.Page;
+import org.htmlparser.PrototypicalNodeFactory;
+import org.htmlparser.Tag;
+import org.htmlparser.Text;
+
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import java.net.URL;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.nio.charset.Charset;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.InputStream;
 
 public class Spider {
 
@@ -44,32 +47,86 @@ public class Spider {
 	private String url;
 
 	//results from crawl
+	private boolean hasMetaData = false;
+	private String title = "";
+	private String modDate = "";
+	private String etag = "";
+	private boolean notModified = false;
+	//whether the page was downloaded and extracted, a page that failed to download is left as it is in the index
+	private boolean fetched = false;
+	private int pageSize = 0;
+	//the keyword maps hold each stemmed keyword of the page and the positions where it appears
+	//(the number of keywords before it in the title or body)
 	private List<String> linkResults = new LinkedList<String>();
-	private Vector<String> wordResults = new Vector<String>();
+	private Map<String, IntList> titleResults = new HashMap<String, IntList>();
+	private Map<String, IntList> wordResults = new HashMap<String, IntList>();
 
-	//information to be used by the recursive function
-	private Set<String> pagesVisited = new HashSet<String>();
-	private List<String> pagesToVisit = new LinkedList<String>();
+	//information to be used by the crawl
 	private static final int MAX_PAGES_TO_SEARCH = 300;
+	public static final int DEFAULT_CRAWL_THREADS = 4;
+
+	//only the first so many bytes of a page are read and indexed, see setMaxPageSize
+	public static final int DEFAULT_MAX_PAGE_SIZE = 8 * 1024 * 1024;
+	private long maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+
+	//how long a fetch waits for the server to connect and then for each read, see setTimeouts
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000;
+	public static final int DEFAULT_READ_TIMEOUT = 30 * 1000;
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+
+	//how many pages of a host are fetched at once and how long to wait between them, see setPoliteness
+	private int hostConnections = Frontier.DEFAULT_HOST_CONNECTIONS;
+	private long crawlDelay = Frontier.DEFAULT_CRAWL_DELAY;
 
-	//for stop wording
-	private Set<String> stopWords = new HashSet<String>();
+	//the crawl commits what it has stored every so many pages or megabytes, see setCommitBatch
+	public static final int DEFAULT_COMMIT_PAGES = 50;
+	public static final double DEFAULT_COMMIT_MB = 16;
+	private int commitPages = DEFAULT_COMMIT_PAGES;
+	private double commitMB = DEFAULT_COMMIT_MB;
+
+	//for stop wording, shared by all the spiders (see StopWords)
+	private StopWords stopWords;
+	private Tokenizer tokens = new Tokenizer("");
+	private Porter porter = new Porter();
 
 	//Constructor
 	public Spider() {
 		initializeStopwords(STOP_WORD_DIC_FILE);
 	}
 
-	public void initializeStopwords(String file) {
-		try {
-			List<String> w = Files.readAllLines(Paths.get(file));
+	//how often search() commits the pages it has stored together with its frontier, see DataManager.setCommitBatch
+	//a crawl that stops goes on from its last commit when it is started again on the same database,
+	//0 for both commits only when the crawl is done
+	public void setCommitBatch(int pages, double mb) {
+		this.commitPages = pages;
+		this.commitMB = mb;
+	}
 
-			for (String a : w) {
-				stopWords.add(a);
-			}
-		} catch (Exception e) {
-			System.out.println("0 " + e);
-		}
+	//the most bytes of a page fetch() reads, the rest of a longer page is not indexed
+	//the page is extracted as it comes in, so this bounds the memory a page takes
+	public void setMaxPageSize(long bytes) {
+		this.maxPageSize = bytes;
+	}
+
+	//the milliseconds fetch() waits for a server to connect and for each read of the page before it gives up on the page,
+	//which then fails like a page that cannot be downloaded, so a server that does not answer cannot hold up a crawler thread
+	public void setTimeouts(int connectMillis, int readMillis) {
+		this.connectTimeout = connectMillis;
+		this.readTimeout = readMillis;
+	}
+
+	//at most hostConnections pages of the same host are fetched at once, and search() waits at least crawlDelay
+	//milliseconds between starting two pages of the same host, or longer if the host's robots.txt asks for it
+	//the pages of other hosts are fetched in the meantime, see Frontier
+	public void setPoliteness(int hostConnections, long crawlDelay) {
+		this.hostConnections = hostConnections;
+		this.crawlDelay = crawlDelay;
+	}
+
+	//uses the stop words in the given file instead, which is read only the first time it is used
+	public void initializeStopwords(String file) {
+		stopWords = StopWords.get(file);
 	}
 	
 
@@ -91,6 +148,20 @@ public class Spider {
 
 	//Sifts through URL pages and sends it to the database
 	public void crawl(String url, DataManager db) {
+		fetch(url);
+		store(db);
+	}
+
+
+	//Downloads and extracts a page without touching the database, so it can run on any thread
+	public void fetch(String url) {
+		fetch(url, null);
+	}
+
+
+	//validators = the last modified date and etag recorded when the page was last crawled, or null
+	//if the server says the page has not changed since then, nothing is downloaded and isNotModified() returns true
+	public void fetch(String url, String[] validators) {
 		//given the url, it will crawl it and recursively crawl on the pages that it links to
 		//
 		//NOTES FROM PROJECT REQUIREMENTS:
@@ -103,16 +174,35 @@ public class Spider {
 		//	that recorded in the index, go ahead and retrieve the url; otherwise ignore
 		//	c. handle cyclic links gracefully 
 		
+		this.url = url;
 
 		try {
-			this.extractMetaData(url, db);
-			this.extractLinks(url, db);
-			this.extractKeywords(url, db);
+			this.extractPage(url, validators);
 		}
 		catch(Exception e) {
 			System.out.println("2 " + e);
 		}
 
+		return;
+	}
+
+
+	//Sends the fetched page to the database, the whole page in one go
+	//storing a page replaces what the database has of it, so a page that failed to download is not stored
+	public void store(DataManager db) {
+		if (this.notModified || !this.fetched) {
+			return;
+		}
+
+		try {
+			if (this.hasMetaData) {
+				db.addMetaData(this.url, this.title, this.modDate, this.pageSize, this.etag);
+			}
+			db.addDocument(this.url, titleResults, wordResults, linkResults);
+		}
+		catch(Exception e) {
+			System.out.println("4 " + e);
+		}
 
 		return;
 	}
@@ -120,162 +210,341 @@ public class Spider {
 
 	//Iteratively searches through a certain number of pages decided on my MAX_PAGES_TO_SEARCH variable
 	public DataManager search(String url) throws IOException {
-		DataManager db = new DataManager();
-		
-		while(this.pagesVisited.size() < MAX_PAGES_TO_SEARCH) {
-			String currentUrl;
-			Spider leg = new Spider();
+		return search(url, DEFAULT_CRAWL_THREADS);
+	}
 
-			if (this.pagesVisited.size() % 50 == 0) {
-				System.out.println("Crawled " + this.pagesVisited.size() + " pages.");
-			}
-			
-			if(this.pagesToVisit.isEmpty()) {
-				currentUrl = url;
-				this.pagesVisited.add(url);
-			}
-			else {
-				currentUrl = this.nextUrl();
-			}
 
-			leg.crawl(currentUrl, db); // Lots of stuff happening here. Look at the crawl method in Spider
-			this.pagesToVisit.addAll(leg.getLinks());
-		}
+	//Same as above with the given number of threads fetching pages.
+	//Only the calling thread writes to the database, since DataManager is not thread safe.
+	public DataManager search(String url, int threads) throws IOException {
+		DataManager db = new DataManager();
+		search(url, threads, db, db);
+		return db;
+	}
 
+
+	//Crawls into a new segment of the index, which the caller publishes with the writer once it is done.
+	//Pages that have not changed since the index last crawled them are left in the segments they are in.
+	public DataManager search(String url, int threads, IndexWriter writer) throws IOException {
+		DataManager db = writer.newSegment();
+		search(url, threads, db, writer);
 		return db;
 	}
 
 
-	private String nextUrl()
-	{
-		String nextUrl;
-		do {
-			nextUrl = this.pagesToVisit.remove(0);
-		} while(this.pagesVisited.contains(nextUrl));
+	//history = what the last crawl found, for sending the validators of the pages and following unchanged pages
+	//if the database has the state of a crawl that did not finish, that crawl goes on instead of starting at url
+	private void search(String url, int threads, DataManager db, CrawlHistory history) throws IOException {
+		String state = db.getCrawlState();
+		final Frontier frontier;
+		if (state == null) {
+			frontier = new Frontier(url, MAX_PAGES_TO_SEARCH);
+		} else {
+			frontier = Frontier.fromState(state, MAX_PAGES_TO_SEARCH);
+			System.out.println("Resuming the crawl with " + frontier.visited() + " pages done.");
+		}
+		frontier.setPoliteness(hostConnections, crawlDelay);
+		db.setCommitBatch(commitPages, commitMB);
+
+		final BlockingQueue<Spider> fetched = new ArrayBlockingQueue<Spider>(threads * 2);
+		final CountDownLatch running = new CountDownLatch(threads);
+		final Map<String, String[]> validators = history.getCacheValidators();
+
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					try {
+						String currentUrl;
+						while ((currentUrl = frontier.next()) != null) {
+							Spider leg = new Spider();
+							leg.setMaxPageSize(maxPageSize);
+							leg.setTimeouts(connectTimeout, readTimeout);
+							leg.fetch(currentUrl, validators.get(currentUrl)); // Lots of stuff happening here. Look at the fetch method in Spider
+							frontier.fetched(currentUrl);
+
+							//the links of an unchanged page are in the database, so the writing thread adds those
+							if (leg.isNotModified()) {
+								fetched.put(leg);
+							} else {
+								frontier.addAll(leg.getLinks());
+								fetched.put(leg);
+								frontier.done();
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						running.countDown();
+					}
+				}
+			}, "spider-" + i);
+			worker.setDaemon(true);
+			worker.start();
+		}
 
-		this.pagesVisited.add(nextUrl);
-		return nextUrl;
+		int stored = 0;
+		try {
+			//keeps storing until every worker has finished and nothing is left on the queue
+			while (running.getCount() > 0 || !fetched.isEmpty()) {
+				Spider leg = fetched.poll(100, TimeUnit.MILLISECONDS);
+				if (leg == null) {
+					continue;
+				}
+
+				if (stored % 50 == 0) {
+					System.out.println("Crawled " + stored + " pages.");
+				}
+
+				//a page that failed to download keeps what the index had of it
+				if (leg.isNotModified()) {
+					frontier.addAll(history.getLinkedURLs(leg.url));
+					frontier.done();
+				} else if (leg.isFetched()) {
+					leg.store(db);
+				}
+				frontier.stored(leg.url);
+				stored++;
+
+				if (db.isBatchFull()) {
+					db.commit(frontier.getState());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	public List<String> getLinks() {
     		return this.linkResults;
 	}
 
+	public boolean isNotModified() {
+		return this.notModified;
+	}
+
+	//false if the page could not be downloaded or extracted, see fetch
+	public boolean isFetched() {
+		return this.fetched;
+	}
 
-	private void extractMetaData(String url, DataManager dm) throws ParserException, IOException {
-		//Here we will gather data such as modified date, page size
-		Parser parser = new Parser(url);
-		TagNameFilter filter = new TagNameFilter("title");
-		
-		String title = "";
-		String modDate = "";
 
-		HttpURLConnection content = (HttpURLConnection) new URL(url).openConnection();
-		//System.out.println(content.getContentLength());
+	//Downloads the page and extracts the title, links and keywords while it comes in
+	private void extractPage(String url, String[] validators) throws ParserException, IOException {
+		//Here we will gather data such as modified date, page size
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestProperty("User-Agent", Robots.AGENT);
+		connection.setConnectTimeout(this.connectTimeout);
+		connection.setReadTimeout(this.readTimeout);
+
+		//asks the server to only send the page if it changed since it was last crawled
+		if (validators != null) {
+			if (!validators[0].equals("")) {
+				connection.setRequestProperty("If-Modified-Since", validators[0]);
+			}
+			if (!validators[1].equals("")) {
+				connection.setRequestProperty("If-None-Match", validators[1]);
+			}
+		}
 
 		try {
-			NodeList list = parser.parse(filter);
-			Node node = list.elementAt(0);
-			
-			if (node instanceof TitleTag) {
-				TitleTag titleTag = (TitleTag) node;
-				title = titleTag.getTitle();
-				//System.out.println(title + "\n");
+			if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				this.notModified = true;
+				return;
 			}
-			
-			if(content.getContentLength() < 0){
-                        	dm.addMetaData(url, title, modDate, 0);
-                	}
-			else {
-				dm.addMetaData(url, title, modDate, content.getContentLength());
+
+			String lastModified = connection.getHeaderField("Last-Modified");
+			if (lastModified != null) {
+				this.modDate = lastModified;
 			}
-			
-			Porter porter = new Porter();
-			String[] titleTokens = title.split(" ");
-			for (String token : titleTokens) {
-				String[] tokenSplit = token.split("[^A-Za-z]");
-
-				for(int i = 0; i < tokenSplit.length; i++) {
-					String tokenValue = tokenSplit[i].replaceAll("[^A-Za-z]", "").toLowerCase();	
-					if (!tokenValue.equals("") && !stopWords.contains(tokenValue)) {
-						String stemToken = "";
-						stemToken = porter.stripAffixes(tokenValue);
-						dm.addEntry(DataManager.TITLE_ID, stemToken, url);	//sends data to database		
-					
-						//used to test data output
-						//System.out.println(tokenValue);
-					}
-				}
+
+			String etag = connection.getHeaderField("ETag");
+			if (etag != null) {
+				this.etag = etag;
+			}
+
+			//the lexer reads the page from the connection as it goes, so neither the bytes nor the text of the page
+			//are copied first and no tree of the page is built
+			PageInputStream body = new PageInputStream(connection.getInputStream(), this.maxPageSize);
+			Page page = new Page(body, getCharset(connection.getContentType()));
+			page.setUrl(url);
+			try {
+				extractNodes(new Lexer(page));
+			}
+			finally {
+				page.close();
 			}
+			this.hasMetaData = true;
+
+			if (connection.getContentLength() < 0) {
+				this.pageSize = (int) body.getCount();
+			} else {
+				this.pageSize = connection.getContentLength();
+			}
+			this.fetched = true;
 		}
-		catch(Exception e) {
-			System.out.println("3 " + e);	//Need to send a blank title instead of an error
+		finally {
+			//disconnects url connection to free sockets
+			connection.disconnect();
 		}
+	}
 
-		//disconnects url connection to free sockets
-		content.disconnect();
 
-		return;
+	//Goes over the nodes of the page one at a time as the lexer reads them, adding the words of each piece of text,
+	//the links and the title; the text of scripts and style sheets is skipped
+	//the title is the text of the first title tag that has any, up to the tag that ends it, with its entities decoded like the body's
+	private void extractNodes(Lexer lexer) throws ParserException {
+		lexer.setNodeFactory(new PrototypicalNodeFactory());
+		StringBuilder titleText = null;
+		int position = 0;
+
+		Node node;
+		while ((node = lexer.nextNode()) != null) {
+			if (node instanceof Text) {
+				String text = ((Text) node).getText();
+				if (titleText != null) {
+					titleText.append(text);
+				}
+				position = addKeywords(Translate.decode(text), this.wordResults, position);
+				continue;
+			}
+			if (!(node instanceof Tag)) {
+				continue;
+			}
+
+			Tag tag = (Tag) node;
+			String name = tag.getTagName();
+			if (titleText != null && (tag.isEndTag() ? name.equals("TITLE") || name.equals("HEAD") || name.equals("HTML")
+					: name.equals("TITLE") || name.equals("BODY"))) {
+				this.title = Translate.decode(titleText.toString());
+				titleText = null;
+			}
+			if (tag.isEndTag()) {
+				continue;
+			}
+
+			if (tag instanceof TitleTag && this.title.equals("") && !tag.isEmptyXmlTag()) {
+				titleText = new StringBuilder();
+			}
+			else if (tag instanceof LinkTag) {
+				try {
+					linkResults.add(new URL(((LinkTag) tag).getLink()).toString());
+				}
+				catch (MalformedURLException e) {
+					//not a link that can be crawled, e.g. javascript:
+				}
+			}
+			else if (tag instanceof ScriptTag) {
+				//the contents of scripts and style sheets are not part of the page text
+				//like a browser, "<script/>" starts a script all the same
+				lexer.parseCDATA(true);
+			}
+			else if (tag instanceof StyleTag) {
+				lexer.parseCDATA();
+			}
+			else if (tag instanceof BaseHrefTag) {
+				//the links after it are relative to the base it gives
+				tag.doSemanticAction();
+			}
+		}
+
+		if (titleText != null) {
+			this.title = Translate.decode(titleText.toString());
+		}
+		addKeywords(this.title, this.titleResults, 0);
 	}
 
 
-	//Extracts all the words in a given URL, may need to sift through words to get rid of useless characters i.e. brackets, periods, etc
-	private void extractKeywords(String url, DataManager db) throws ParserException, IOException {
-		//Here we will get all the keywords of the page and their freq
-		//and save them into the jdbm system
-		
-		//Extracts words inside body tag
-		Parser parser = new Parser(url);
-		parser.setEncoding("utf-8");
+	//Counts the bytes of a page as they are read, and ends the page once the given number of them have been read
+	private static class PageInputStream extends FilterInputStream {
 
-		StringBean beanWord = new StringBean();
-		parser.visitAllNodesWith(beanWord);
-	
-		String contents = beanWord.getStrings();
-		StringTokenizer st = new StringTokenizer(contents);	
-	
-		//creates Stop Stem object to work with stemming the keyword
-		Porter porter = new Porter();
-
-		while (st.hasMoreTokens()) {
-			String tokenNext = st.nextToken();
-
-			//splits tokens if words are separated by non alpha characters i.e. word.next splits into two strings --> word next
-			String[] tokenSplit = tokenNext.split("[^A-Za-z]");			
-			
-			for(int i = 0; i < tokenSplit.length; i++) {
-				String tokenValue = tokenSplit[i].replaceAll("[^A-Za-z]", "").toLowerCase();	
-				if (!tokenValue.equals("") && !stopWords.contains(tokenValue)) {
-					String stemToken = "";
-					stemToken = porter.stripAffixes(tokenValue);
-					this.wordResults.add(stemToken);
-					db.addEntry(DataManager.BODY_ID, stemToken, url);	//sends data to database		
-				
-					//used to test data output
-					//System.out.println(tokenValue);
+		private long count = 0;
+		private long limit;
+
+		PageInputStream(InputStream in, long limit) {
+			super(in);
+			this.limit = limit;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public int read() throws IOException {
+			if (count >= limit) {
+				return -1;
+			}
+
+			int read = super.read();
+			if (read >= 0) {
+				count++;
+			}
+			return read;
+		}
+
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (count >= limit) {
+				return -1;
+			}
+
+			int read = super.read(buffer, offset, (int) Math.min(length, limit - count));
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, limit - count));
+			count += skipped;
+			return skipped;
+		}
+	}
+
+
+	//the charset given in the Content-Type header, utf-8 if there is none we can use
+	private String getCharset(String contentType) {
+		if (contentType != null) {
+			int index = contentType.toLowerCase().indexOf("charset=");
+			if (index >= 0) {
+				String charset = contentType.substring(index + 8).split(";")[0].replace("\"", "").trim();
+				try {
+					if (Charset.isSupported(charset)) {
+						return charset;
+					}
+				}
+				catch (IllegalArgumentException e) {
+					//not a valid charset name
 				}
 			}
 		}
-		return;
+
+		return "utf-8";
 	}
 
-	
-	//Extracts all the links in a given URL
-	private void extractLinks(String url, DataManager db) throws ParserException, IOException {
-		//Here we shall extract the links to other pages and record them into the database :)
-		
-		//Extracts links
-		LinkBean beanLinks = new LinkBean();
-		beanLinks.setURL(url);
-		URL[] urls = beanLinks.getLinks();
-		for (URL s : urls) {
-			this.linkResults.add(s.toString());
-			db.addEntry(DataManager.LINKS_ID, url, s.toString());	//sends data to database
-
-			//prints out links in the page, used to test data output
-			//System.out.println(s.toString());
+
+	//Extracts all the words in the given text and adds their stems with their positions, see Tokenizer for what a word is
+	//stop words are not given a position, so the words around them count as next to each other
+	//position = the position of the first word of the text, returns the position after its last word
+	private int addKeywords(CharSequence contents, Map<String, IntList> keywords, int position) {
+		tokens.reset(contents);
+
+		while (tokens.next()) {
+			if (!stopWords.contains(tokens.buffer(), tokens.length())) {
+				String stemToken = porter.stripAffixes(tokens.buffer(), tokens.length());
+				addPosition(keywords, stemToken, position++);
+			}
 		}
 
-		return;
+		return position;
+	}
+
+
+	private void addPosition(Map<String, IntList> keywords, String keyword, int position) {
+		IntList positions = keywords.get(keyword);
+		if (positions == null) {
+			positions = new IntList(4);
+			keywords.put(keyword, positions);
+		}
+		positions.add(position);
 	}
 }
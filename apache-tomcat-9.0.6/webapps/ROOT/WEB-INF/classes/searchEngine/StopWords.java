@@ -0,0 +1,122 @@
+/*
+ * The stop words, which are too common to be worth indexing, one per line in a file.
+ * A file is read once for the whole process (see get) and the words are shared by the crawler threads and the searches,
+ * so the pages and the queries always drop the same words.
+ * The words are packed into one char array and found by open addressing, so a word can be tested straight from
+ * the buffer of a Tokenizer without making a String. The set cannot be changed once it is built.
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StopWords {
+
+	//the stop words of the files read so far
+	private static final Map<String, StopWords> loaded = new HashMap<String, StopWords>();
+
+	//word i is chars[starts[i]..starts[i + 1])
+	private final char[] chars;
+	private final int[] starts;
+	//the number of the word in each slot plus 1, 0 for an empty slot; at least half the slots are empty
+	private final int[] table;
+	private final int size;
+
+	private StopWords(Set<String> words) {
+		size = words.size();
+		starts = new int[size + 1];
+		int total = 0;
+		for (String word : words) {
+			total += word.length();
+		}
+		chars = new char[total];
+
+		int tableSize = 16;
+		while (tableSize < size * 2) {
+			tableSize *= 2;
+		}
+		table = new int[tableSize];
+
+		int i = 0;
+		for (String word : words) {
+			word.getChars(0, word.length(), chars, starts[i]);
+			starts[i + 1] = starts[i] + word.length();
+
+			int slot = hash(chars, starts[i], word.length()) & (table.length - 1);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			table[slot] = i + 1;
+			i++;
+		}
+	}
+
+	//the stop words in the given file, read the first time they are asked for
+	//a file that cannot be read gives no stop words, and is tried again the next time
+	public static synchronized StopWords get(String file) {
+		StopWords result = loaded.get(file);
+		if (result == null) {
+			try {
+				result = new StopWords(new LinkedHashSet<String>(Files.readAllLines(Paths.get(file))));
+				loaded.put(file, result);
+			} catch (IOException e) {
+				System.out.println("0 " + e);
+				result = new StopWords(new LinkedHashSet<String>());
+			}
+		}
+
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(String word) {
+		return contains(word.toCharArray(), word.length());
+	}
+
+	//whether word[0..length) is a stop word
+	public boolean contains(char[] word, int length) {
+		int slot = hash(word, 0, length) & (table.length - 1);
+		while (table[slot] != 0) {
+			int i = table[slot] - 1;
+			if (equals(i, word, length)) {
+				return true;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+
+		return false;
+	}
+
+	private boolean equals(int i, char[] word, int length) {
+		int start = starts[i];
+		if (starts[i + 1] - start != length) {
+			return false;
+		}
+		for (int j = 0; j < length; j++) {
+			if (chars[start + j] != word[j]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int hash(char[] word, int start, int length) {
+		int hash = 0;
+		for (int i = start; i < start + length; i++) {
+			hash = 31 * hash + word[i];
+		}
+
+		return hash ^ (hash >>> 16);
+	}
+}
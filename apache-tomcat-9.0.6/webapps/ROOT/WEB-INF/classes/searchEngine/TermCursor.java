@@ -0,0 +1,100 @@
+/*
+ * Walks the pages of one query word in increasing page id order.
+ * The body and title posting lists of the word are merged, so each page appears once with its total frequency
+ * and whether the word is in its title.
+ * A FlatTermCursor walks the same pages in a mapped file instead of arrays.
+ */
+
+package searchEngine;
+
+public class TermCursor {
+
+	//returned by page() once the cursor has passed the last page
+	public static final int END = Integer.MAX_VALUE;
+
+	private int[] pages;
+	private int[] freqs;
+	private boolean[] inTitle;
+	private int size;
+	private int pos = 0;
+
+	//idf of the word, and the most it can add to the score of any page (see DataManager.calculateStatistics)
+	private double idf;
+	private double upperBound;
+
+	public TermCursor(PostingList bodyPages, PostingList titlePages, double idf, double upperBound) {
+		int capacity = bodyPages.size() + titlePages.size();
+		this.pages = new int[capacity];
+		this.freqs = new int[capacity];
+		this.inTitle = new boolean[capacity];
+		this.idf = idf;
+		this.upperBound = upperBound;
+
+		int b = 0;
+		int t = 0;
+		while (b < bodyPages.size() || t < titlePages.size()) {
+			int pageID;
+			int freq = 0;
+			boolean title = false;
+
+			if (t == titlePages.size() || (b < bodyPages.size() && bodyPages.id(b) < titlePages.id(t))) {
+				pageID = bodyPages.id(b);
+			} else {
+				pageID = titlePages.id(t);
+				freq += titlePages.freq(t);
+				title = true;
+				t++;
+			}
+			if (b < bodyPages.size() && bodyPages.id(b) == pageID) {
+				freq += bodyPages.freq(b);
+				b++;
+			}
+
+			pages[size] = pageID;
+			freqs[size] = freq;
+			inTitle[size] = title;
+			size++;
+		}
+	}
+
+	//for a cursor that reads the pages from somewhere else, such as a FlatIndex, and overrides the methods below
+	protected TermCursor(double idf, double upperBound) {
+		this.idf = idf;
+		this.upperBound = upperBound;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double idf() {
+		return idf;
+	}
+
+	public double upperBound() {
+		return upperBound;
+	}
+
+	public int page() {
+		return pos < size ? pages[pos] : END;
+	}
+
+	public int freq() {
+		return freqs[pos];
+	}
+
+	public boolean inTitle() {
+		return inTitle[pos];
+	}
+
+	public void next() {
+		pos++;
+	}
+
+	//moves to the first page with an id of at least target and returns it
+	//long runs of pages are skipped by galloping, see SortedIds.seek
+	public int advance(int target) {
+		pos = SortedIds.seek(pages, size, pos, target);
+		return page();
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * The words of a database in sorted order, with their ids, kept as front coded blocks in one byte array.
+ * The words are sorted by their UTF-8 bytes and cut into blocks of BLOCK_SIZE words. The first word of a block
+ * is stored whole, every other word as the number of bytes it shares with the word before it followed by the rest
+ * of its bytes, which for a sorted vocabulary of stems is usually a byte or two. A word is found by a binary search
+ * over the first words of the blocks and a scan of one block, and the words in a range, e.g. all the words with
+ * a prefix (comp*), by scanning on from where the range starts. Only the words returned are made into strings.
+ *
+ * The array holds, as variable length integers (see PostingList):
+ * 	the number of words, then for every block the offset where it starts (from the end of the offsets),
+ * 	then the blocks: for the first word of a block its length, its bytes and its id,
+ * 	for the other words the length of the prefix shared with the word before, the length and bytes of the rest
+ * 	and the id
+ * DataManager builds the dictionary when it is finalized (see getTermDictionary).
+ */
+
+package searchEngine;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+
+public class TermDictionary {
+
+	private static final int BLOCK_SIZE = 16;
+
+	private byte[] data;
+	private int size;
+	private int[] blockStarts;
+
+	private TermDictionary(byte[] data) {
+		this.data = data;
+
+		int[] pos = new int[1];
+		size = PostingList.readVInt(data, pos);
+		blockStarts = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		for (int i = 0; i < blockStarts.length; i++) {
+			blockStarts[i] = PostingList.readVInt(data, pos);
+		}
+		for (int i = 0; i < blockStarts.length; i++) {
+			blockStarts[i] += pos[0];
+		}
+	}
+
+	//the dictionary of the given words and their ids, in any order
+	public static TermDictionary build(String[] words, int[] ids) {
+		final byte[][] bytes = new byte[words.length][];
+		Integer[] order = new Integer[words.length];
+		for (int i = 0; i < words.length; i++) {
+			bytes[i] = words[i].getBytes(StandardCharsets.UTF_8);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return compareBytes(bytes[a], 0, bytes[a].length, bytes[b]);
+			}
+		});
+
+		//the blocks first, then the offsets in front of them
+		byte[] blocks = new byte[16];
+		int length = 0;
+		int[] blockStarts = new int[(words.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		byte[] previous = new byte[0];
+		for (int i = 0; i < words.length; i++) {
+			byte[] word = bytes[order[i]];
+			int shared = 0;
+			if (i % BLOCK_SIZE == 0) {
+				blockStarts[i / BLOCK_SIZE] = length;
+			} else {
+				while (shared < word.length && shared < previous.length && word[shared] == previous[shared]) {
+					shared++;
+				}
+			}
+
+			if (length + 15 + word.length > blocks.length) {
+				blocks = Arrays.copyOf(blocks, Math.max(length + 15 + word.length, blocks.length * 2));
+			}
+			if (i % BLOCK_SIZE != 0) {
+				length = PostingList.writeVInt(blocks, length, shared);
+			}
+			length = PostingList.writeVInt(blocks, length, word.length - shared);
+			System.arraycopy(word, shared, blocks, length, word.length - shared);
+			length += word.length - shared;
+			length = PostingList.writeVInt(blocks, length, ids[order[i]]);
+			previous = word;
+		}
+
+		byte[] data = new byte[5 + blockStarts.length * 5 + length];
+		int pos = PostingList.writeVInt(data, 0, words.length);
+		for (int blockStart : blockStarts) {
+			pos = PostingList.writeVInt(data, pos, blockStart);
+		}
+		System.arraycopy(blocks, 0, data, pos, length);
+
+		return new TermDictionary(Arrays.copyOf(data, pos + length));
+	}
+
+	public static TermDictionary fromBytes(byte[] data) {
+		return new TermDictionary(data);
+	}
+
+	public byte[] toBytes() {
+		return data;
+	}
+
+	//the number of words
+	public int size() {
+		return size;
+	}
+
+	//the id of the word, or DataManager.NOT_FOUND if it is not in the dictionary
+	public int lookup(String word) {
+		byte[] target = word.getBytes(StandardCharsets.UTF_8);
+		Scan scan = new Scan(findBlock(target));
+		while (scan.next()) {
+			int cmp = compareBytes(scan.word, 0, scan.length, target);
+			if (cmp == 0) {
+				return scan.id;
+			} else if (cmp > 0) {
+				break;
+			}
+		}
+
+		return DataManager.NOT_FOUND;
+	}
+
+	//the words from "from" on and before "to" (null for no end), in order, at most maxWords of them
+	public List<String> getWords(String from, String to, int maxWords) {
+		byte[] start = from.getBytes(StandardCharsets.UTF_8);
+		byte[] end = to == null ? null : to.getBytes(StandardCharsets.UTF_8);
+
+		List<String> result = new Vector<String>();
+		Scan scan = new Scan(findBlock(start));
+		while (result.size() < maxWords && scan.next()) {
+			if (end != null && compareBytes(scan.word, 0, scan.length, end) >= 0) {
+				break;
+			}
+			if (compareBytes(scan.word, 0, scan.length, start) >= 0) {
+				result.add(new String(scan.word, 0, scan.length, StandardCharsets.UTF_8));
+			}
+		}
+
+		return result;
+	}
+
+	//the words that start with the prefix, in order, at most maxWords of them
+	public List<String> getWordsWithPrefix(String prefix, int maxWords) {
+		byte[] start = prefix.getBytes(StandardCharsets.UTF_8);
+
+		List<String> result = new Vector<String>();
+		Scan scan = new Scan(findBlock(start));
+		while (result.size() < maxWords && scan.next()) {
+			if (compareBytes(scan.word, 0, scan.length, start) < 0) {
+				continue;
+			}
+			if (scan.length < start.length || compareBytes(scan.word, 0, start.length, start) != 0) {
+				break;
+			}
+			result.add(new String(scan.word, 0, scan.length, StandardCharsets.UTF_8));
+		}
+
+		return result;
+	}
+
+	//the last block whose first word is not after the target, or 0 if there is none
+	private int findBlock(byte[] target) {
+		int low = 0;
+		int high = blockStarts.length - 1;
+		int[] pos = new int[1];
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			pos[0] = blockStarts[mid];
+			int length = PostingList.readVInt(data, pos);
+			if (compareBytes(data, pos[0], pos[0] + length, target) <= 0) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return low;
+	}
+
+	//compares a[from, to) with b as unsigned bytes
+	private static int compareBytes(byte[] a, int from, int to, byte[] b) {
+		for (int i = 0; from + i < to && i < b.length; i++) {
+			int cmp = (a[from + i] & 0xFF) - (b[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+
+		return (to - from) - b.length;
+	}
+
+	//decodes the words one after the other from the start of a block to the end of the dictionary
+	private class Scan {
+
+		byte[] word = new byte[32];
+		int length = 0;
+		int id;
+
+		private int index;
+		private int[] pos = new int[1];
+
+		Scan(int block) {
+			index = block * BLOCK_SIZE;
+			pos[0] = blockStarts.length == 0 ? 0 : blockStarts[block];
+		}
+
+		boolean next() {
+			if (index >= size) {
+				return false;
+			}
+
+			int shared = index % BLOCK_SIZE == 0 ? 0 : PostingList.readVInt(data, pos);
+			int rest = PostingList.readVInt(data, pos);
+			if (shared + rest > word.length) {
+				word = Arrays.copyOf(word, Math.max(shared + rest, word.length * 2));
+			}
+			System.arraycopy(data, pos[0], word, shared, rest);
+			pos[0] += rest;
+			length = shared + rest;
+			id = PostingList.readVInt(data, pos);
+			index++;
+			return true;
+		}
+	}
+}
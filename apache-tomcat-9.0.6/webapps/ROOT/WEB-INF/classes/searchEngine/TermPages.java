@@ -0,0 +1,14 @@
+/*
+ * Finds the pages that have a word or a phrase, which is all a query's phrases and boolean operators
+ * need from an index (see Query.getMatchingPages).
+ */
+
+package searchEngine;
+
+import java.io.IOException;
+
+public interface TermPages {
+
+	//the pages that have the word, or the phrase of several words, in their title or body, in id order
+	public int[] getTermPages(String[] term) throws IOException;
+}
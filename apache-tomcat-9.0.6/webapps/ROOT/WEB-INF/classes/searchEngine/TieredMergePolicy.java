@@ -0,0 +1,166 @@
+/*
+ * Decides which segments to merge next (see MergeScheduler).
+ * Segments are grouped in tiers by size: the segments up to floorSegmentBytes are tier 0, and every next tier holds
+ * segments mergeFactor times larger than the one before. When a tier has segmentsPerTier segments, its smallest ones
+ * (at most mergeFactor of them) are merged into one, which usually lands in the next tier. A page is therefore copied
+ * about once per tier, and the number of segments a search has to read grows with the log of the size of the index.
+ * A segment with more than maxDeletedPercent of its pages deleted is merged on its own, to purge them.
+ *
+ * The size of a segment is the size of its files, counting only the share of its pages that are not deleted.
+ * Segments larger than half of maxMergedSegmentBytes are only merged to purge deleted pages.
+ */
+
+package searchEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+
+public class TieredMergePolicy {
+
+	private long floorSegmentBytes = 2 * 1024 * 1024;
+	private int segmentsPerTier = 10;
+	private int mergeFactor = 10;
+	private long maxMergedSegmentBytes = 1024L * 1024 * 1024;
+	private double maxDeletedPercent = 33;
+
+	public long getFloorSegmentBytes() {
+		return floorSegmentBytes;
+	}
+
+	public void setFloorSegmentBytes(long floorSegmentBytes) {
+		this.floorSegmentBytes = Math.max(floorSegmentBytes, 1);
+	}
+
+	public int getSegmentsPerTier() {
+		return segmentsPerTier;
+	}
+
+	public void setSegmentsPerTier(int segmentsPerTier) {
+		this.segmentsPerTier = Math.max(segmentsPerTier, 2);
+	}
+
+	public int getMergeFactor() {
+		return mergeFactor;
+	}
+
+	public void setMergeFactor(int mergeFactor) {
+		this.mergeFactor = Math.max(mergeFactor, 2);
+	}
+
+	public long getMaxMergedSegmentBytes() {
+		return maxMergedSegmentBytes;
+	}
+
+	public void setMaxMergedSegmentBytes(long maxMergedSegmentBytes) {
+		this.maxMergedSegmentBytes = maxMergedSegmentBytes;
+	}
+
+	public double getMaxDeletedPercent() {
+		return maxDeletedPercent;
+	}
+
+	public void setMaxDeletedPercent(double maxDeletedPercent) {
+		this.maxDeletedPercent = maxDeletedPercent;
+	}
+
+	//the names of the segments to merge next, in the order of the segment list, or null if nothing needs merging
+	//merges in lower tiers come first, as they are the cheapest and remove the most segments for their size
+	public List<String> findMerge(IndexSnapshot snapshot, File dir) throws IOException {
+		List<Segment> segments = new Vector<Segment>();
+		for (int i = 0; i < snapshot.size(); i++) {
+			segments.add(new Segment(i, snapshot, dir));
+		}
+
+		Collections.sort(segments, new Comparator<Segment>() {
+			public int compare(Segment a, Segment b) {
+				return Long.compare(a.bytes, b.bytes);
+			}
+		});
+
+		//walks the tiers from the smallest segments up
+		int start = 0;
+		while (start < segments.size()) {
+			int tier = tier(segments.get(start).bytes);
+			int end = start;
+			while (end < segments.size() && tier(segments.get(end).bytes) == tier) {
+				end++;
+			}
+
+			if (end - start >= segmentsPerTier) {
+				List<Segment> merge = new Vector<Segment>();
+				long mergedBytes = 0;
+				for (int i = start; i < end && merge.size() < mergeFactor; i++) {
+					Segment segment = segments.get(i);
+					if (segment.bytes > maxMergedSegmentBytes / 2 || mergedBytes + segment.bytes > maxMergedSegmentBytes) {
+						break;
+					}
+					merge.add(segment);
+					mergedBytes += segment.bytes;
+				}
+
+				if (merge.size() >= 2) {
+					return toNames(merge);
+				}
+			}
+
+			start = end;
+		}
+
+		for (Segment segment : segments) {
+			if (segment.docCount > 0 && segment.deletedCount * 100.0 / segment.docCount > maxDeletedPercent) {
+				List<Segment> merge = new Vector<Segment>();
+				merge.add(segment);
+				return toNames(merge);
+			}
+		}
+
+		return null;
+	}
+
+	private int tier(long bytes) {
+		if (bytes <= floorSegmentBytes) {
+			return 0;
+		}
+
+		return 1 + (int) (Math.log((double) bytes / floorSegmentBytes) / Math.log(mergeFactor));
+	}
+
+	private static List<String> toNames(List<Segment> merge) {
+		Collections.sort(merge, new Comparator<Segment>() {
+			public int compare(Segment a, Segment b) {
+				return a.index - b.index;
+			}
+		});
+
+		List<String> result = new Vector<String>();
+		for (Segment segment : merge) {
+			result.add(segment.name);
+		}
+
+		return result;
+	}
+
+	private static class Segment {
+
+		int index;
+		String name;
+		int docCount;
+		int deletedCount;
+		long bytes;
+
+		Segment(int index, IndexSnapshot snapshot, File dir) throws IOException {
+			SegmentReader reader = snapshot.getSegment(index);
+			this.index = index;
+			this.name = reader.getName();
+			this.docCount = reader.getDocumentCount();
+			this.deletedCount = snapshot.getDeletedPages(index).length;
+
+			long fileBytes = new File(dir, name + ".db").length() + new File(dir, name + ".lg").length();
+			this.bytes = docCount == 0 ? fileBytes : fileBytes * (docCount - deletedCount) / docCount;
+		}
+	}
+}
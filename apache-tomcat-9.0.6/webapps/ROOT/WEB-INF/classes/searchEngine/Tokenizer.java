@@ -0,0 +1,73 @@
+/*
+ * Splits text into the words the index is made of: the runs of ascii letters in it, in lower case.
+ * Everything else separates words, so "word.next" gives "word" and "next" and "don't" gives "don" and "t".
+ * This is what the crawler used to get from a StringTokenizer, a split("[^A-Za-z]") of every token and toLowerCase.
+ *
+ * The text is read once and each word is put into a buffer that is reused for the next one,
+ * so going over a page makes no Strings; the words can be stemmed straight from the buffer (see Porter).
+ */
+
+package searchEngine;
+
+import java.util.Arrays;
+
+public class Tokenizer {
+
+	private CharSequence text;
+	private int pos;
+
+	//the current word is buffer[0..length)
+	private char[] buffer = new char[32];
+	private int length;
+
+	public Tokenizer(CharSequence text) {
+		reset(text);
+	}
+
+	//starts over on other text, keeping the buffer
+	public void reset(CharSequence text) {
+		this.text = text;
+		this.pos = 0;
+		this.length = 0;
+	}
+
+	//moves to the next word, returns false once there are no more
+	public boolean next() {
+		length = 0;
+		int end = text.length();
+
+		while (pos < end) {
+			char ch = text.charAt(pos++);
+			if (ch >= 'a' && ch <= 'z') {
+				append(ch);
+			} else if (ch >= 'A' && ch <= 'Z') {
+				append((char) (ch + ('a' - 'A')));
+			} else if (length > 0) {
+				return true;
+			}
+		}
+
+		return length > 0;
+	}
+
+	//the current word is the first length() characters of the buffer, which next() overwrites
+	public char[] buffer() {
+		return buffer;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	//the current word as a String
+	public String toString() {
+		return new String(buffer, 0, length);
+	}
+
+	private void append(char ch) {
+		if (length == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		buffer[length++] = ch;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Keeps the k best scoring pages seen so far in a fixed size min-heap.
+ * The worst of the kept pages is at the root, so a new page only has to beat that one to get in.
+ * Equal scores are ordered by page id, lowest first, so results do not depend on the order pages are offered.
+ */
+
+package searchEngine;
+
+public class TopKHeap {
+
+	private int[] ids;
+	private double[] scores;
+	private int size;
+
+	public TopKHeap(int k) {
+		ids = new int[Math.max(k, 0)];
+		scores = new double[Math.max(k, 0)];
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == ids.length;
+	}
+
+	//the score a page has to beat to get into a full heap
+	public double minScore() {
+		return size == 0 ? 0 : scores[0];
+	}
+
+	//returns true if the page was kept
+	public boolean offer(int id, double score) {
+		if (size < ids.length) {
+			ids[size] = id;
+			scores[size] = score;
+			siftUp(size);
+			size++;
+			return true;
+		}
+
+		if (size == 0 || !worse(ids[0], scores[0], id, score)) {
+			return false;
+		}
+
+		ids[0] = id;
+		scores[0] = score;
+		siftDown(0);
+		return true;
+	}
+
+	//empties the heap into the two arrays, best page first; returns the number of pages
+	public int drain(int[] resultIDs, double[] resultScores) {
+		int count = size;
+		for (int i = count - 1; i >= 0; i--) {
+			resultIDs[i] = ids[0];
+			resultScores[i] = scores[0];
+			size--;
+			ids[0] = ids[size];
+			scores[0] = scores[size];
+			siftDown(0);
+		}
+
+		return count;
+	}
+
+	//whether page a ranks below page b
+	private static boolean worse(int idA, double scoreA, int idB, double scoreB) {
+		if (scoreA != scoreB) {
+			return scoreA < scoreB;
+		}
+		return idA > idB;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!worse(ids[i], scores[i], ids[parent], scores[parent])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int left = 2 * i + 1;
+			if (left >= size) {
+				break;
+			}
+
+			int child = left;
+			if (left + 1 < size && worse(ids[left + 1], scores[left + 1], ids[left], scores[left])) {
+				child = left + 1;
+			}
+			if (!worse(ids[child], scores[child], ids[i], scores[i])) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int id = ids[a];
+		ids[a] = ids[b];
+		ids[b] = id;
+
+		double score = scores[a];
+		scores[a] = scores[b];
+		scores[b] = score;
+	}
+}